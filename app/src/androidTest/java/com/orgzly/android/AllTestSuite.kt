@@ -38,18 +38,27 @@ import org.junit.runners.Suite
         ShareActivityTest::class,
         SyncingTest::class,
 
+        AppPreferencesSnapshotTest::class,
         BookNameTest::class,
         BookParsingTest::class,
         CreatedAtPropertyTest::class,
         DataTest::class,
+        ListWidgetRowsTest::class,
+        NoteExportCacheTest::class,
+        NotePlanningTimesTest::class,
+        QueryProfilerTest::class,
         SettingsTest::class,
         StateChangeTest::class,
         StructureTest::class,
         UriTest::class,
 
+        AgendaQueryTest::class,
+        QueryResultCacheTest::class,
         QueryTest::class,
         QueryTokenizerTest::class,
         QueryUtilsTest::class,
+        TagSearchTest::class,
+        TextSearchTest::class,
 
         NoteRemindersTest::class,
 
@@ -59,6 +68,7 @@ import org.junit.runners.Suite
         LocalDbRepoTest::class,
         RepoFactoryTest::class,
         SyncTest::class,
+        WebdavRepoTest::class,
 
         ImageLoaderTest::class,
 
@@ -50,7 +50,7 @@ public class OrgzlyTest {
 
     protected DataRepository dataRepository;
 
-    private OrgzlyDatabase database;
+    protected OrgzlyDatabase database;
 
     @Rule
     public GrantPermissionRule grantPermissionRule;
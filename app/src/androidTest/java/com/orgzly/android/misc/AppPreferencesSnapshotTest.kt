@@ -0,0 +1,44 @@
+package com.orgzly.android.misc
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.prefs.AppPreferences
+import com.orgzly.android.prefs.AppPreferencesSnapshot
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class AppPreferencesSnapshotTest : OrgzlyTest() {
+    @Test
+    fun testReusedWhileUnchanged() {
+        assertSame(AppPreferencesSnapshot.get(context), AppPreferencesSnapshot.get(context))
+    }
+
+    @Test
+    fun testStatesChange() {
+        val before = AppPreferencesSnapshot.get(context)
+
+        AppPreferences.states(context, "TODO | DONE FINISHED")
+
+        val after = AppPreferencesSnapshot.get(context)
+
+        assertNotEquals(before.version, after.version)
+        assertEquals(setOf("DONE", "FINISHED"), after.doneKeywords)
+        assertTrue(after.isDone("FINISHED"))
+        assertFalse(after.isDone("TODO"))
+        assertFalse(after.isDone(null))
+    }
+
+    @Test
+    fun testRemindersChange() {
+        AppPreferences.remindersForDeadlineEnabled(context, true)
+
+        assertTrue(AppPreferencesSnapshot.get(context).remindersForDeadlineEnabled)
+
+        AppPreferences.remindersForDeadlineEnabled(context, false)
+
+        assertFalse(AppPreferencesSnapshot.get(context).remindersForDeadlineEnabled)
+    }
+}
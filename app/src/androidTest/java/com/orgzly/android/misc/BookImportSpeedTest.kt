@@ -0,0 +1,101 @@
+package com.orgzly.android.misc
+
+import com.orgzly.android.BookFormat
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.util.MiscUtils
+import org.junit.Assert
+import org.junit.Ignore
+import org.junit.Test
+import java.util.LongSummaryStatistics
+
+/**
+ * Benchmark for importing large books, written as a failing test (to display the results).
+ */
+@Ignore("Not a test")
+class BookImportSpeedTest : OrgzlyTest() {
+    @Test
+    fun import1k() {
+        test(1_000)
+    }
+
+    @Test
+    fun import10k() {
+        test(10_000)
+    }
+
+    @Test
+    fun import50k() {
+        test(50_000)
+    }
+
+    private fun test(notes: Int) {
+        val file = dataRepository.getTempBookFile()
+
+        try {
+            MiscUtils.writeStringToFile(generateBook(notes), file)
+
+            val times = LongArray(ITERATIONS)
+
+            for (i in 0 until ITERATIONS) {
+                val t1 = System.currentTimeMillis()
+
+                dataRepository.loadBookFromFile("book-$notes", BookFormat.ORG, file)
+
+                val t2 = System.currentTimeMillis()
+
+                times[i] = t2 - t1
+            }
+
+            val stats = LongSummaryStatistics().apply {
+                times.drop(SKIP_FIRST).forEach { accept(it) }
+            }
+
+            Assert.fail("$notes notes: $stats")
+
+        } finally {
+            file.delete()
+        }
+    }
+
+    /**
+     * Nested notes with some planning times, properties, events and tags.
+     */
+    private fun generateBook(notes: Int): String {
+        val sb = StringBuilder()
+
+        for (i in 0 until notes) {
+            val level = 1 + i % 4
+
+            sb.append("*".repeat(level))
+
+            if (i % 3 == 0) {
+                sb.append(" TODO")
+            }
+
+            sb.append(" Note #").append(i)
+
+            if (i % 7 == 0) {
+                sb.append(" :tag${i % 10}:")
+            }
+
+            sb.append("\n")
+
+            if (i % 2 == 0) {
+                sb.append("SCHEDULED: <2018-01-${String.format("%02d", 1 + i % 28)} Mon .+1d>\n")
+            }
+
+            if (i % 5 == 0) {
+                sb.append(":PROPERTIES:\n:ID: note-$i\n:CREATED: [2018-01-01 Mon 09:00]\n:END:\n")
+            }
+
+            sb.append("Content of note #$i with an event <2018-02-0${1 + i % 9} Thu>\n")
+        }
+
+        return sb.toString()
+    }
+
+    companion object {
+        private const val ITERATIONS = 5
+        private const val SKIP_FIRST = 2
+    }
+}
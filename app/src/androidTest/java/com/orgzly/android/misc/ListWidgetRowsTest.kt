@@ -0,0 +1,70 @@
+package com.orgzly.android.misc
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.widgets.ListWidgetRows
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class ListWidgetRowsTest : OrgzlyTest() {
+    @Test
+    fun testReusedWhileUnchanged() {
+        testUtils.setupBook("book-a", "* TODO Note A-01\n* Note A-02\n")
+
+        val rows = ListWidgetRows.get(context, dataRepository, "i.todo")
+
+        assertEquals(1, rows.size)
+        assertSame(rows, ListWidgetRows.get(context, dataRepository, "i.todo"))
+    }
+
+    @Test
+    fun testRecreatedAfterNoteChange() {
+        testUtils.setupBook("book-a", "* TODO Note A-01\n* Note A-02\n")
+
+        val rows = ListWidgetRows.get(context, dataRepository, "i.todo")
+
+        dataRepository.setNotesState(setOf(dataRepository.getLastNote("Note A-02")!!.id), "TODO")
+
+        val newRows = ListWidgetRows.get(context, dataRepository, "i.todo")
+
+        assertNotSame(rows, newRows)
+        assertEquals(2, newRows.size)
+    }
+
+    @Test
+    fun testReusedAfterChangeInOtherBook() {
+        testUtils.setupBook("book-a", "* TODO Note A-01\n")
+        testUtils.setupBook("book-b", "* Note B-01\n")
+
+        val rows = ListWidgetRows.get(context, dataRepository, "b.book-a i.todo")
+
+        dataRepository.setNotesState(setOf(dataRepository.getLastNote("Note B-01")!!.id), "TODO")
+
+        assertSame(rows, ListWidgetRows.get(context, dataRepository, "b.book-a i.todo"))
+    }
+
+    @Test
+    fun testReusedAfterFolding() {
+        testUtils.setupBook("book-a", "* TODO Note A-01\n** Note A-02\n")
+
+        val rows = ListWidgetRows.get(context, dataRepository, "i.todo")
+
+        dataRepository.toggleNoteFoldedState(dataRepository.getLastNote("Note A-01")!!.id)
+
+        assertSame(rows, ListWidgetRows.get(context, dataRepository, "i.todo"))
+    }
+
+    @Test
+    fun testRecreatedForNewBook() {
+        testUtils.setupBook("book-a", "* TODO Note A-01\n")
+
+        val rows = ListWidgetRows.get(context, dataRepository, "i.todo")
+
+        testUtils.setupBook("book-b", "* TODO Note B-01\n")
+
+        assertEquals(2, ListWidgetRows.get(context, dataRepository, "i.todo").also {
+            assertNotSame(rows, it)
+        }.size)
+    }
+}
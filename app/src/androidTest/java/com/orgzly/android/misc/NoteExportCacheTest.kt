@@ -0,0 +1,94 @@
+package com.orgzly.android.misc
+
+import androidx.preference.PreferenceManager
+import com.orgzly.R
+import com.orgzly.android.NotesOrgExporter
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.db.entity.BookView
+import com.orgzly.org.OrgProperties
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Test
+import java.io.StringWriter
+
+/**
+ * Notes unchanged since the last export are reused. Make sure changed ones are not.
+ */
+class NoteExportCacheTest : OrgzlyTest() {
+    @Test
+    fun testUnchanged() {
+        val book = testUtils.setupBook("book-a", "* Note A\n** Note B\n* Note C\n")
+
+        val expectedBook = "* Note A\n\n** Note B\n\n* Note C\n\n"
+
+        assertEquals(expectedBook, exportBook(book))
+        assertEquals(expectedBook, exportBook(book))
+    }
+
+    @Test
+    fun testStateChange() {
+        val book = testUtils.setupBook("book-a", "* Note A\n* Note B\n")
+
+        exportBook(book)
+
+        dataRepository.setNotesState(setOf(dataRepository.getLastNote("Note B")!!.id), "TODO")
+
+        assertEquals("* Note A\n\n* TODO Note B\n\n", exportBook(book))
+    }
+
+    @Test
+    fun testContentChange() {
+        val book = testUtils.setupBook("book-a", "* Note A\n* Note B\n")
+
+        exportBook(book)
+
+        dataRepository.updateNoteContent(book.book.id, dataRepository.getLastNote("Note A")!!.id, "Content")
+
+        assertEquals("* Note A\n\nContent\n\n* Note B\n\n", exportBook(book))
+    }
+
+    @Test
+    fun testPropertyAdded() {
+        val book = testUtils.setupBook("book-a", "* Note A\n* Note B\n")
+
+        exportBook(book)
+
+        val properties = OrgProperties().apply { put("ID", "b") }
+
+        dataRepository.insertNoteProperties(dataRepository.getLastNote("Note B")!!.id, properties)
+
+        assertEquals("* Note A\n\n* Note B\n:PROPERTIES:\n:ID:       b\n:END:\n\n", exportBook(book))
+    }
+
+    @Test
+    fun testDemoted() {
+        val book = testUtils.setupBook("book-a", "* Note A\n* Note B\n** Note C\n")
+
+        exportBook(book)
+
+        dataRepository.demoteNotes(setOf(dataRepository.getLastNote("Note B")!!.id))
+
+        assertEquals("* Note A\n\n** Note B\n\n*** Note C\n\n", exportBook(book))
+    }
+
+    @Test
+    fun testSettingsChange() {
+        val book = testUtils.setupBook("book-a", "* Note A :tag:\n")
+
+        val exportedBook = exportBook(book)
+
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putString(context.getString(R.string.pref_key_tags_column), "20")
+                .commit()
+
+        assertNotEquals(exportedBook, exportBook(book))
+    }
+
+    private fun exportBook(book: BookView): String {
+        val sw = StringWriter()
+
+        NotesOrgExporter(dataRepository).exportBook(book.book, sw)
+
+        return sw.toString()
+    }
+}
@@ -0,0 +1,79 @@
+package com.orgzly.android.misc
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.org.datetime.OrgDateTime
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import java.util.Calendar
+
+/**
+ * Planning times copied to notes must follow their ranges.
+ */
+class NotePlanningTimesTest : OrgzlyTest() {
+    @Test
+    fun testImported() {
+        testUtils.setupBook("book-a", "* Note A\nSCHEDULED: <2018-01-05 Fri 09:00> DEADLINE: [2018-01-06 Sat]\n")
+
+        val note = dataRepository.getLastNote("Note A")!!
+
+        assertEquals(millis("<2018-01-05 Fri 09:00>"), note.scheduledTimeTimestamp)
+        assertEquals(startOfDay("<2018-01-05 Fri 09:00>"), note.scheduledTimeStartOfDay)
+        assertEquals(9, note.scheduledTimeHour)
+        assertEquals(true, note.scheduledIsActive)
+
+        assertEquals(millis("[2018-01-06 Sat]"), note.deadlineTimeTimestamp)
+        assertNull(note.deadlineTimeHour)
+        assertEquals(false, note.deadlineIsActive)
+
+        assertNull(note.closedTimeTimestamp)
+    }
+
+    @Test
+    fun testScheduledTimeUpdated() {
+        testUtils.setupBook("book-a", "* Note A\nSCHEDULED: <2018-01-05 Fri 09:00>\n")
+
+        val id = dataRepository.getLastNote("Note A")!!.id
+
+        dataRepository.setNotesScheduledTime(setOf(id), OrgDateTime.parse("<2018-02-01 Thu>"))
+
+        dataRepository.getLastNote("Note A")!!.let { note ->
+            assertEquals(millis("<2018-02-01 Thu>"), note.scheduledTimeTimestamp)
+            assertNull(note.scheduledTimeHour)
+        }
+
+        dataRepository.setNotesScheduledTime(setOf(id), null)
+
+        dataRepository.getLastNote("Note A")!!.let { note ->
+            assertNull(note.scheduledTimeTimestamp)
+            assertNull(note.scheduledTimeStartOfDay)
+            assertNull(note.scheduledIsActive)
+        }
+    }
+
+    @Test
+    fun testNoteUpdated() {
+        testUtils.setupBook("book-a", "* Note A\n")
+
+        val id = dataRepository.getLastNote("Note A")!!.id
+
+        val payload = dataRepository.getNotePayload(id)!!.copy(closed = "[2018-03-01 Thu 10:00]")
+
+        dataRepository.updateNote(id, payload)
+
+        assertEquals(millis("[2018-03-01 Thu 10:00]"), dataRepository.getLastNote("Note A")!!.closedTimeTimestamp)
+    }
+
+    private fun millis(str: String): Long {
+        return OrgDateTime.parse(str).calendar.timeInMillis
+    }
+
+    private fun startOfDay(str: String): Long {
+        return OrgDateTime.parse(str).calendar.apply {
+            set(Calendar.HOUR_OF_DAY, 0)
+            set(Calendar.MINUTE, 0)
+            set(Calendar.SECOND, 0)
+            set(Calendar.MILLISECOND, 0)
+        }.timeInMillis
+    }
+}
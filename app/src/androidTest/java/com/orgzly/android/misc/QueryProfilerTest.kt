@@ -0,0 +1,71 @@
+package com.orgzly.android.misc
+
+import androidx.sqlite.db.SimpleSQLiteQuery
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.db.OrgzlyDatabase
+import com.orgzly.android.db.entity.AppLog
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+class QueryProfilerTest : OrgzlyTest() {
+    private lateinit var db: OrgzlyDatabase
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+
+        db = OrgzlyDatabase.forMemory(context)
+    }
+
+    @After
+    override fun tearDown() {
+        db.close()
+
+        super.tearDown()
+    }
+
+    @Test
+    fun testDisabled() {
+        db.queryProfiler.isEnabled = false
+
+        db.query(SimpleSQLiteQuery("SELECT * FROM books")).use { it.count }
+
+        assertTrue(db.queryProfiler.getProfiles().isEmpty())
+    }
+
+    @Test
+    fun testQuery() {
+        db.appLog().insert(AppLog(0, 1, "name", "message"))
+        db.appLog().insert(AppLog(0, 2, "name", "message"))
+
+        db.queryProfiler.isEnabled = true
+
+        repeat(2) {
+            db.query(SimpleSQLiteQuery("SELECT * FROM app_logs WHERE name = ?", arrayOf("name"))).use {
+                while (it.moveToNext()) { }
+            }
+        }
+
+        val profile = db.queryProfiler.getProfiles().single { it.sql.contains("app_logs") }
+
+        assertEquals("SELECT * FROM app_logs WHERE name = ?", profile.sql)
+        assertEquals(2, profile.executions)
+        assertEquals(2, profile.rows)
+        assertTrue(profile.plan, profile.plan.contains("index_app_logs_name"))
+    }
+
+    @Test
+    fun testStatement() {
+        db.queryProfiler.isEnabled = true
+
+        db.appLog().insert(AppLog(0, 1, "name", "message"))
+
+        val profile = db.queryProfiler.getProfiles().single { it.sql.contains("INSERT") && it.sql.contains("app_logs") }
+
+        assertEquals(1, profile.executions)
+        assertEquals(1, profile.rows)
+    }
+}
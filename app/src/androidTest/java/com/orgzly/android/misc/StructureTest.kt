@@ -81,6 +81,45 @@ class StructureTest : OrgzlyTest() {
         Assert.assertEquals(2, getNote("Note A-10").position.level)
     }
 
+    @Test
+    fun testBookSetupParentsAndAncestors() {
+        val bookView = testUtils.setupBook(
+                "Book A",
+                """
+                    Preface
+
+                    * Note A-01 :a:
+                    * Note A-02 :b:
+                    ** Note A-03
+                    ** Note A-04 :c:
+                    *** Note A-05
+                    **** Note A-06
+                    ** Note A-07
+                    * Note A-08 :d:
+                    **** Note A-09 :e:
+                    ** Note A-10
+                """.trimIndent())
+
+        val rootId = getRootNode(bookView.book.id).id
+
+        Assert.assertEquals(rootId, getNote("Note A-01").position.parentId)
+        Assert.assertEquals(rootId, getNote("Note A-02").position.parentId)
+        Assert.assertEquals(getNote("Note A-02").id, getNote("Note A-03").position.parentId)
+        Assert.assertEquals(getNote("Note A-02").id, getNote("Note A-04").position.parentId)
+        Assert.assertEquals(getNote("Note A-04").id, getNote("Note A-05").position.parentId)
+        Assert.assertEquals(getNote("Note A-05").id, getNote("Note A-06").position.parentId)
+        Assert.assertEquals(getNote("Note A-02").id, getNote("Note A-07").position.parentId)
+        Assert.assertEquals(rootId, getNote("Note A-08").position.parentId)
+        Assert.assertEquals(getNote("Note A-08").id, getNote("Note A-09").position.parentId)
+        Assert.assertEquals(getNote("Note A-08").id, getNote("Note A-10").position.parentId)
+
+        Assert.assertEquals(emptyList<String>(), getNoteView("Note A-01").getInheritedTagsList())
+        Assert.assertEquals(listOf("b"), getNoteView("Note A-03").getInheritedTagsList())
+        Assert.assertEquals(listOf("b", "c"), getNoteView("Note A-06").getInheritedTagsList().sorted())
+        Assert.assertEquals(listOf("d"), getNoteView("Note A-09").getInheritedTagsList())
+        Assert.assertEquals(listOf("d"), getNoteView("Note A-10").getInheritedTagsList())
+    }
+
     @Test
     fun testCut() {
         val book = testUtils.setupBook(
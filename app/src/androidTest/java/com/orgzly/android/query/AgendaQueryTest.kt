@@ -0,0 +1,84 @@
+package com.orgzly.android.query
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.db.entity.AgendaOccurrence
+import com.orgzly.android.query.user.InternalQueryParser
+import com.orgzly.org.datetime.OrgDateTime
+import org.joda.time.DateTime
+import org.joda.time.Days
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Agenda queries return a row for every day a note appears on.
+ */
+class AgendaQueryTest : OrgzlyTest() {
+    @Test
+    fun testDayWindow() {
+        testUtils.setupBook("book-a", "* Note A\nSCHEDULED: ${day(0)}\n* Note B\nSCHEDULED: ${day(5)}\n* Note C\n")
+
+        assertEquals(listOf("Note A" to 0), agenda("ad.3"))
+        assertEquals(listOf("Note A" to 0, "Note B" to 5), agenda("ad.7"))
+    }
+
+    @Test
+    fun testRepeater() {
+        testUtils.setupBook("book-a", "* Note A\nSCHEDULED: ${day(0, "+1d")}\n")
+
+        assertEquals(listOf("Note A" to 0, "Note A" to 1, "Note A" to 2), agenda("ad.3"))
+    }
+
+    @Test
+    fun testOverdue() {
+        testUtils.setupBook("book-a", "* Note A\nDEADLINE: ${day(-2)}\n")
+
+        val notes = dataRepository.selectNotesFromQuery(InternalQueryParser().parse("ad.3"))
+
+        assertEquals(1, notes.size)
+        assertEquals(true, notes.first().agendaIsOverdue)
+        assertEquals(AgendaOccurrence.DEADLINE, notes.first().agendaTimeType)
+    }
+
+    @Test
+    fun testEvent() {
+        testUtils.setupBook("book-a", "* Note A\n${day(1)} ${day(2)}\n")
+
+        assertEquals(listOf("Note A" to 1, "Note A" to 2), agenda("ad.3"))
+    }
+
+    @Test
+    fun testUpdatedNote() {
+        testUtils.setupBook("book-a", "* Note A\nSCHEDULED: ${day(0)}\n")
+
+        assertEquals(listOf("Note A" to 0), agenda("ad.3"))
+
+        val noteA = dataRepository.getLastNote("Note A")!!
+
+        dataRepository.setNotesScheduledTime(setOf(noteA.id), OrgDateTime.parse(day(2)))
+
+        assertEquals(listOf("Note A" to 2), agenda("ad.3"))
+    }
+
+    private fun day(offset: Int, repeater: String? = null): String {
+        val date = DateTime.now().plusDays(offset)
+
+        val time = OrgDateTime.Builder()
+                .setIsActive(true)
+                .setYear(date.year)
+                .setMonth(date.monthOfYear - 1)
+                .setDay(date.dayOfMonth)
+                .build()
+                .toString()
+
+        return if (repeater != null) time.replace(">", " $repeater>") else time
+    }
+
+    /* Titles with days from today. */
+    private fun agenda(queryString: String): List<Pair<String, Int>> {
+        val today = DateTime.now().withTimeAtStartOfDay()
+
+        return dataRepository.selectNotesFromQuery(InternalQueryParser().parse(queryString)).map {
+            it.note.title to Days.daysBetween(today, DateTime(it.agendaDay!!)).days
+        }.sortedWith(compareBy({ it.first }, { it.second }))
+    }
+}
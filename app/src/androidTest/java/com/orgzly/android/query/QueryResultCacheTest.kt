@@ -0,0 +1,135 @@
+package com.orgzly.android.query
+
+import androidx.sqlite.db.SimpleSQLiteQuery
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.db.entity.NoteView
+import com.orgzly.android.query.sql.QueryResultCache
+import com.orgzly.android.query.user.InternalQueryParser
+import org.joda.time.DateTime
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.fail
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class QueryResultCacheTest : OrgzlyTest() {
+    @Test
+    fun testExpiresAtNextMinuteForHours() {
+        val now = DateTime(2026, 10, 18, 13, 45, 30, 500)
+
+        assertEquals(
+                DateTime(2026, 10, 18, 13, 46).millis,
+                QueryResultCache.expiresAt(InternalQueryParser().parse("s.2h"), now))
+    }
+
+    @Test
+    fun testExpiresAtNextDayForDays() {
+        val now = DateTime(2026, 10, 18, 13, 45, 30, 500)
+
+        assertEquals(
+                DateTime(2026, 10, 19, 0, 0).millis,
+                QueryResultCache.expiresAt(InternalQueryParser().parse("s.today i.todo"), now))
+
+        assertEquals(
+                DateTime(2026, 10, 19, 0, 0).millis,
+                QueryResultCache.expiresAt(InternalQueryParser().parse(".it.done ad.7"), now))
+    }
+
+    @Test
+    fun testNeverExpiresWithoutTimes() {
+        val now = DateTime(2026, 10, 18, 13, 45, 30, 500)
+
+        assertEquals(
+                Long.MAX_VALUE,
+                QueryResultCache.expiresAt(InternalQueryParser().parse("b.book-a i.todo"), now))
+    }
+
+    @Test
+    fun testBypassedInTransaction() {
+        testUtils.setupBook("book-a", "* TODO Note A-01\n* Note A-02\n")
+
+        val query = InternalQueryParser().parse("i.todo")
+
+        val notes = dataRepository.selectNotesFromQuery(query)
+
+        val sqlDb = database.openHelper.writableDatabase
+
+        sqlDb.beginTransaction()
+        try {
+            dataRepository.setNotesState(setOf(dataRepository.getLastNote("Note A-02")!!.id), "TODO")
+
+            assertEquals(2, dataRepository.selectNotesFromQuery(query).size)
+
+        } finally {
+            /* Rolled back. */
+            sqlDb.endTransaction()
+        }
+
+        assertSame(notes, dataRepository.selectNotesFromQuery(query))
+    }
+
+    @Test
+    fun testFailedEvaluationEvicted() {
+        val cache = QueryResultCache()
+
+        val query = InternalQueryParser().parse("i.todo")
+        val sqlQuery = SimpleSQLiteQuery("SELECT 1")
+
+        val runs = AtomicInteger()
+
+        try {
+            cache.getOrRun(query, sqlQuery, 1) {
+                runs.incrementAndGet()
+                throw IllegalStateException("Failed")
+            }
+            fail("Exception expected")
+
+        } catch (e: IllegalStateException) {
+            assertEquals("Failed", e.message)
+        }
+
+        val notes = cache.getOrRun(query, sqlQuery, 1) {
+            runs.incrementAndGet()
+            emptyList()
+        }
+
+        assertEquals(2, runs.get())
+        assertSame(notes, cache.getOrRun(query, sqlQuery, 1) { throw AssertionError() })
+    }
+
+    @Test
+    fun testConcurrentCallersShareEvaluation() {
+        val cache = QueryResultCache()
+
+        val query = InternalQueryParser().parse("i.todo")
+        val sqlQuery = SimpleSQLiteQuery("SELECT 1")
+
+        val runs = AtomicInteger()
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+
+        val executor = Executors.newFixedThreadPool(4)
+
+        val results = (1..4).map {
+            executor.submit<List<NoteView>> {
+                cache.getOrRun(query, sqlQuery, 1) {
+                    runs.incrementAndGet()
+                    started.countDown()
+                    release.await()
+                    emptyList()
+                }
+            }
+        }
+
+        started.await(5, TimeUnit.SECONDS)
+        release.countDown()
+
+        results.forEach { it.get(5, TimeUnit.SECONDS) }
+        executor.shutdown()
+
+        assertEquals(1, runs.get())
+    }
+}
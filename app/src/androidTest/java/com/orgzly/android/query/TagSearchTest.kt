@@ -0,0 +1,84 @@
+package com.orgzly.android.query
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.query.user.InternalQueryParser
+import com.orgzly.android.ui.NotePlace
+import com.orgzly.android.ui.Place
+import com.orgzly.android.usecase.NoteCopy
+import com.orgzly.android.usecase.NotePaste
+import com.orgzly.android.usecase.UseCaseRunner
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Searching notes by their own and inherited tags.
+ */
+class TagSearchTest : OrgzlyTest() {
+    @Test
+    fun testExactTag() {
+        testUtils.setupBook("book-a", "* Note A :homework:\n* Note B :work:\n")
+
+        assertEquals(listOf("Note B"), search("t.work"))
+    }
+
+    @Test
+    fun testCaseInsensitive() {
+        testUtils.setupBook("book-a", "* Note A :Work:\n")
+
+        assertEquals(listOf("Note A"), search("t.work"))
+    }
+
+    @Test
+    fun testInheritedTags() {
+        testUtils.setupBook("book-a", "* Note A :a:\n** Note B :b:\n*** Note C\n* Note D\n")
+
+        assertEquals(listOf("Note A", "Note B", "Note C"), search("t.a"))
+        assertEquals(listOf("Note A"), search("tn.a"))
+        assertEquals(listOf("Note D"), search(".t.a"))
+    }
+
+    @Test
+    fun testAncestorTagsUpdated() {
+        testUtils.setupBook("book-a", "* Note A :a:\n** Note B\n")
+
+        val noteA = dataRepository.getLastNote("Note A")!!
+
+        dataRepository.updateNote(noteA.id, dataRepository.getNotePayload(noteA.id)!!.copy(tags = listOf("c")))
+
+        assertEquals(emptyList<String>(), search("t.a"))
+        assertEquals(listOf("Note A", "Note B"), search("t.c"))
+    }
+
+    @Test
+    fun testRefiled() {
+        val book = testUtils.setupBook("book-a", "* Note A :a:\n** Note B\n* Note C :c:\n")
+
+        val noteB = dataRepository.getLastNote("Note B")!!
+        val noteC = dataRepository.getLastNote("Note C")!!
+
+        dataRepository.refileNotes(setOf(noteB.id), NotePlace(book.book.id, noteC.id, Place.UNDER))
+
+        assertEquals(listOf("Note A"), search("t.a"))
+        assertEquals(listOf("Note B", "Note C"), search("t.c"))
+    }
+
+    @Test
+    fun testPasted() {
+        val book = testUtils.setupBook("book-a", "* Note A :a:\n** Note B\n* Note C :c:\n")
+
+        val noteA = dataRepository.getLastNote("Note A")!!
+        val noteC = dataRepository.getLastNote("Note C")!!
+
+        UseCaseRunner.run(NoteCopy(book.book.id, setOf(noteC.id)))
+        UseCaseRunner.run(NotePaste(book.book.id, noteA.id, Place.UNDER))
+
+        assertEquals(listOf("Note A", "Note B", "Note C"), search("t.a"))
+        assertEquals(listOf("Note C", "Note C"), search("t.c"))
+    }
+
+    private fun search(queryString: String): List<String> {
+        val query = InternalQueryParser().parse(queryString)
+
+        return dataRepository.selectNotesFromQuery(query).map { it.note.title }.sorted()
+    }
+}
@@ -0,0 +1,72 @@
+package com.orgzly.android.query
+
+import com.orgzly.android.OrgzlyTest
+import com.orgzly.android.query.user.InternalQueryParser
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Searching notes' text using the full-text index.
+ */
+class TextSearchTest : OrgzlyTest() {
+    @Test
+    fun testWordPrefix() {
+        testUtils.setupBook("book-a", "* Note A\nHomework\n* Note B\nWork\n")
+
+        assertEquals(listOf("Note B"), search("wor"))
+        assertEquals(listOf("Note A"), search("homew"))
+    }
+
+    @Test
+    fun testQuotedPhrase() {
+        testUtils.setupBook("book-a", "* Note A\nreading list\n* Note B\nlist of reading\n")
+
+        assertEquals(listOf("Note A"), search("\"reading list\""))
+        assertEquals(emptyList<String>(), search("\"reading lis\""))
+    }
+
+    @Test
+    fun testTags() {
+        testUtils.setupBook("book-a", "* Note A :holiday:\n* Note B\n")
+
+        assertEquals(listOf("Note A"), search("holiday"))
+    }
+
+    @Test
+    fun testUpdatedContent() {
+        val book = testUtils.setupBook("book-a", "* Note A\nOld content\n")
+
+        val note = dataRepository.getLastNote("Note A")!!
+
+        dataRepository.updateNoteContent(book.book.id, note.id, "New content")
+
+        assertEquals(emptyList<String>(), search("old"))
+        assertEquals(listOf("Note A"), search("new"))
+    }
+
+    @Test
+    fun testDeletedBook() {
+        val book = testUtils.setupBook("book-a", "* Note A\n")
+
+        dataRepository.deleteBook(book, false)
+
+        testUtils.setupBook("book-b", "* Note B\n")
+
+        assertEquals(listOf("Note B"), search("note"))
+    }
+
+    @Test
+    fun testRebuiltIndex() {
+        testUtils.setupBook("book-a", "* Note A\nContent\n")
+
+        dataRepository.rebuildSearchIndex()
+
+        assertEquals(listOf("Note A"), search("content"))
+    }
+
+    private fun search(queryString: String): List<String> {
+        val query = InternalQueryParser().parse(queryString)
+
+        return dataRepository.selectNotesFromQuery(query).map { it.note.title }
+    }
+}
@@ -3,6 +3,7 @@ package com.orgzly.android.reminders
 import com.orgzly.android.OrgzlyTest
 import com.orgzly.android.db.dao.ReminderTimeDao
 import com.orgzly.android.reminders.NoteReminders.getNoteReminders
+import com.orgzly.org.datetime.OrgDateTime
 import org.joda.time.Instant
 import org.junit.Assert
 import org.junit.Test
@@ -113,4 +114,54 @@ class NoteRemindersTest : OrgzlyTest() {
             Assert.assertEquals("2017-03-16T09:00:00.000", runTime.toLocalDateTime().toString())
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testNextReminder() {
+        testUtils.setupBook(
+                "notebook",
+                """
+                    * Note 1
+                    SCHEDULED: <2017-03-20 Mon 16:00>
+                    * Note 2
+                    DEADLINE: <2017-03-18 Sat 10:00>
+                    * Note 3
+                    SCHEDULED: <2017-03-14 Tue 10:00>
+                """.trimIndent())
+
+        val now = Instant.parse("2017-03-15T13:00:00")
+
+        val note = NoteReminders.getNextNoteReminder(context, dataRepository, now)
+
+        Assert.assertEquals("Note 2", note?.payload?.title)
+        Assert.assertEquals("2017-03-18T10:00:00.000", note?.runTime?.toLocalDateTime().toString())
+    }
+
+    @Test
+    fun testNextReminderAfterNoteChange() {
+        testUtils.setupBook(
+                "notebook",
+                """
+                    * Note 1
+                    SCHEDULED: <2017-03-20 Mon 16:00>
+                    * Note 2
+                    SCHEDULED: <2017-03-18 Sat 10:00>
+                """.trimIndent())
+
+        val now = Instant.parse("2017-03-15T13:00:00")
+
+        Assert.assertEquals("Note 2",
+                NoteReminders.getNextNoteReminder(context, dataRepository, now)?.payload?.title)
+
+        val note1 = dataRepository.getLastNote("Note 1")!!
+
+        dataRepository.setNotesScheduledTime(setOf(note1.id), OrgDateTime.parse("<2017-03-16 Thu 08:00>"))
+
+        Assert.assertEquals("Note 1",
+                NoteReminders.getNextNoteReminder(context, dataRepository, now)?.payload?.title)
+
+        dataRepository.setNotesState(setOf(note1.id), "DONE")
+
+        Assert.assertEquals("Note 2",
+                NoteReminders.getNextNoteReminder(context, dataRepository, now)?.payload?.title)
+    }
+}
@@ -7,6 +7,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.orgzly.android.BookName;
+import com.orgzly.android.data.UploadedBook;
 import com.orgzly.android.OrgzlyTest;
 import com.orgzly.android.db.entity.BookView;
 import com.orgzly.android.db.entity.Note;
@@ -17,6 +18,8 @@ import com.orgzly.android.sync.SyncUtils;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 // FIXME: Clean this up - split it up.
@@ -54,6 +57,67 @@ public class DataRepositoryTest extends OrgzlyTest {
         assertEquals("Remote books", 3, SyncUtils.getBooksFromAllRepos(dataRepository, null).size());
     }
 
+    @Test
+    public void testBooksFromMultipleRepos() throws IOException {
+        Repo repoA = testUtils.setupRepo(RepoType.MOCK, "mock://repo-a");
+        testUtils.setupRook(repoA, "mock://repo-a/remote-book-1.org", "", "0abcdef", 1400067156000L);
+        testUtils.setupRook(repoA, "mock://repo-a/remote-book-2.org", "", "1abcdef", 1300067156000L);
+
+        Repo repoB = testUtils.setupRepo(RepoType.MOCK, "mock://repo-b");
+        testUtils.setupRook(repoB, "mock://repo-b/remote-book-3.org", "", "2abcdef", 1200067156000L);
+
+        List<VersionedRook> vrooks = SyncUtils.getBooksFromAllRepos(dataRepository, null);
+
+        assertEquals("Remote books", 3, vrooks.size());
+        assertEquals(2, countBooksInRepo(vrooks, repoA));
+        assertEquals(1, countBooksInRepo(vrooks, repoB));
+    }
+
+    private int countBooksInRepo(List<VersionedRook> vrooks, Repo repo) {
+        int count = 0;
+        for (VersionedRook vrook : vrooks) {
+            if (vrook.getRepoId() == repo.getId()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testUploadedBookStaysModifiedIfChangedAfterExport() throws IOException {
+        Repo repo = testUtils.setupRepo(RepoType.MOCK, "mock://repo-a");
+        BookView book = testUtils.setupBook("book-a", "* TODO Note A-01\n* Note A-02\n");
+
+        UploadedBook uploadedBook = dataRepository.uploadBookToRepo(repo, "book-a.org", book);
+
+        dataRepository.setNotesState(
+                Collections.singleton(dataRepository.getLastNote("Note A-02").getId()), "TODO");
+
+        dataRepository.storeUploadedBook(uploadedBook);
+
+        book = dataRepository.getBookView("book-a");
+        assertEquals("mock://repo-a/book-a.org", book.getSyncedTo().getUri().toString());
+        assertTrue(book.getBook().isModified());
+    }
+
+    @Test
+    public void testUploadedBookNotModifiedIfUnchangedAfterExport() throws IOException {
+        Repo repo = testUtils.setupRepo(RepoType.MOCK, "mock://repo-a");
+        testUtils.setupBook("book-a", "* TODO Note A-01\n* Note A-02\n");
+
+        dataRepository.setNotesState(
+                Collections.singleton(dataRepository.getLastNote("Note A-02").getId()), "TODO");
+
+        BookView book = dataRepository.getBookView("book-a");
+        assertTrue(book.getBook().isModified());
+
+        dataRepository.storeUploadedBook(dataRepository.uploadBookToRepo(repo, "book-a.org", book));
+
+        book = dataRepository.getBookView("book-a");
+        assertEquals("mock://repo-a/book-a.org", book.getSyncedTo().getUri().toString());
+        assertFalse(book.getBook().isModified());
+    }
+
     @Test
     public void testLoadRook() throws IOException {
         Repo repo = testUtils.setupRepo(RepoType.MOCK, "mock://repo-a");
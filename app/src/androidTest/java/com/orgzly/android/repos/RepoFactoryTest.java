@@ -2,15 +2,22 @@ package com.orgzly.android.repos;
 
 import com.orgzly.BuildConfig;
 import com.orgzly.android.OrgzlyTest;
+import com.orgzly.android.db.entity.Repo;
 
 import org.junit.Assume;
 import org.junit.Test;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class RepoFactoryTest extends OrgzlyTest {
+    private static final String WEBDAV_URL = "https://example.com/dav";
 
     @Test
     public void testCreateRepoFromUrl1() {
@@ -37,6 +44,34 @@ public class RepoFactoryTest extends OrgzlyTest {
         assertEquals("mock://authority/path", repo.getUri().toString());
     }
 
+    @Test
+    public void testWebdavRepoInstanceReused() {
+        long id = dataRepository.createRepo(webdavRepo(0, "password"));
+
+        SyncRepo repo = dataRepository.getRepoInstance(id, RepoType.WEBDAV, WEBDAV_URL);
+
+        assertSame(repo, dataRepository.getRepoInstance(id, RepoType.WEBDAV, WEBDAV_URL));
+    }
+
+    @Test
+    public void testWebdavRepoInstanceAfterUpdate() {
+        long id = dataRepository.createRepo(webdavRepo(0, "password"));
+
+        SyncRepo repo = dataRepository.getRepoInstance(id, RepoType.WEBDAV, WEBDAV_URL);
+
+        long newId = dataRepository.updateRepo(webdavRepo(id, "new-password"));
+
+        assertNotSame(repo, dataRepository.getRepoInstance(newId, RepoType.WEBDAV, WEBDAV_URL));
+    }
+
+    private static RepoWithProps webdavRepo(long id, String password) {
+        Map<String, String> props = new HashMap<>();
+        props.put(WebdavRepo.USERNAME_PREF_KEY, "username");
+        props.put(WebdavRepo.PASSWORD_PREF_KEY, password);
+
+        return new RepoWithProps(new Repo(id, RepoType.WEBDAV, WEBDAV_URL), props);
+    }
+
     @Test
     public void testInvalidDirectoryUrl() {
         try {
@@ -0,0 +1,39 @@
+package com.orgzly.android.repos;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+
+import com.orgzly.android.OrgzlyTest;
+
+import org.junit.Test;
+
+public class WebdavRepoTest extends OrgzlyTest {
+    private static final Uri REPO_URI = Uri.parse("https://example.com/dav");
+
+    @Test
+    public void testSameEtag() {
+        assertTrue(WebdavRepo.isSameRevision(rook("abc", 1000L), rook("abc", 2000L)));
+    }
+
+    @Test
+    public void testDifferentEtag() {
+        assertFalse(WebdavRepo.isSameRevision(rook("abc", 1000L), rook("def", 1000L)));
+    }
+
+    @Test
+    public void testLegacyRevisionWithSameModificationTime() {
+        assertTrue(WebdavRepo.isSameRevision(rook("book.org1000", 1000L), rook("abc", 1000L)));
+    }
+
+    @Test
+    public void testLegacyRevisionWithDifferentModificationTime() {
+        assertFalse(WebdavRepo.isSameRevision(rook("book.org1000", 1000L), rook("abc", 2000L)));
+    }
+
+    private static VersionedRook rook(String revision, long mtime) {
+        return new VersionedRook(
+                1, RepoType.WEBDAV, REPO_URI, Uri.withAppendedPath(REPO_URI, "book.org"), revision, mtime);
+    }
+}
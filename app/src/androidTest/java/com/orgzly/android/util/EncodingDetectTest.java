@@ -2,14 +2,21 @@ package com.orgzly.android.util;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * chardet *
@@ -123,4 +130,92 @@ public class EncodingDetectTest {
         assertTrue(detect.isDetected());
         assertEquals("WINDOWS-1252", detect.getEncoding());
     }
+
+    @Test
+    public void testSampleAscii() throws IOException {
+        EncodingDetect detect = getFromResourceSample("ascii.org");
+
+        assertFalse(detect.isDetected());
+        assertTrue(detect.isAscii());
+    }
+
+    @Test
+    public void testSampleChineseLipsum() throws IOException {
+        EncodingDetect detect = getFromResourceSample("Chinese-Lipsum.org");
+
+        assertEquals("UTF-8", detect.getEncoding());
+        assertFalse(detect.isAscii());
+    }
+
+    @Test
+    public void testSamplePeople() throws IOException {
+        EncodingDetect detect = getFromResourceSample("org-people.org");
+
+        assertEquals("WINDOWS-1252", detect.getEncoding());
+    }
+
+    @Test
+    public void testSampleBom() {
+        byte[] sample = { (byte) 0xFF, (byte) 0xFE, '*', 0, ' ', 0, 'A', 0 };
+
+        assertEquals("UTF-16LE", EncodingDetect.getInstance(sample, sample.length).getEncoding());
+    }
+
+    @Test
+    public void testSampleUtf8CutOff() {
+        /* Last character (U+4E2D) is cut off by the end of the sample. */
+        byte[] sample = { '*', ' ', (byte) 0xE4, (byte) 0xB8, (byte) 0xAD, ' ', (byte) 0xE4, (byte) 0xB8 };
+
+        assertEquals("UTF-8", EncodingDetect.getInstance(sample, sample.length).getEncoding());
+    }
+
+    @Test
+    public void testSampleUtf8FollowedByLatin1() throws IOException {
+        byte[] utf8 = "* Zürich\n".getBytes(StandardCharsets.UTF_8);
+        byte[] latin1 = "* Zürich\n".getBytes(StandardCharsets.ISO_8859_1);
+
+        File file = File.createTempFile("encoding", ".org");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(utf8);
+                out.write(latin1);
+            }
+
+            /* Latin-1 starts right after the sample. */
+            Encoding.Sampled sampled = Encoding.sample(file, null, utf8.length);
+
+            assertEquals("UTF-8", sampled.getEncoding().getUsed());
+            assertFalse(sampled.isConclusive());
+
+            try (Reader reader = sampled.reader()) {
+                char[] buffer = new char[1024];
+                while (reader.read(buffer) != -1) {
+                    // Read until Latin-1 input
+                }
+                fail("Latin-1 input after the sample should not be decoded as UTF-8");
+
+            } catch (MalformedInputException e) {
+                // Expected
+            }
+
+        } finally {
+            file.delete();
+        }
+    }
+
+    private EncodingDetect getFromResourceSample(String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (InputStream is = getFromResource(name)) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+
+        byte[] sample = out.toByteArray();
+
+        return EncodingDetect.getInstance(sample, sample.length);
+    }
 }
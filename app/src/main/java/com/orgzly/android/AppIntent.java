@@ -26,6 +26,7 @@ public class AppIntent {
     public static final String ACTION_REPARSE_NOTES = "com.orgzly.intent.action.REPARSE_NOTES";
     public static final String ACTION_SYNC_CREATED_AT_WITH_PROPERTY = "com.orgzly.intent.action.SYNC_CREATED_AT_WITH_PROPERTY";
     public static final String ACTION_UPDATE_TIMESTAMPS = "com.orgzly.intent.action.UPDATE_TIMESTAMPS";
+    public static final String ACTION_REBUILD_SEARCH_INDEX = "com.orgzly.intent.action.REBUILD_SEARCH_INDEX";
 
     public static final String ACTION_OPEN_NOTE = "com.orgzly.intent.action.OPEN_NOTE";
     public static final String ACTION_FOLLOW_LINK_TO_NOTE_WITH_PROPERTY = "com.orgzly.intent.action.FOLLOW_LINK_TO_NOTE_WITH_PROPERTY";
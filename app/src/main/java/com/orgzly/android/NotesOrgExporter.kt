@@ -1,11 +1,16 @@
 package com.orgzly.android
 
+import android.database.Cursor
 import android.util.Log
 import com.orgzly.R
 import com.orgzly.android.data.DataRepository
 import com.orgzly.android.data.mappers.OrgMapper
 import com.orgzly.android.db.entity.Book
+import com.orgzly.android.db.entity.Note
 import com.orgzly.android.prefs.AppPreferences
+import com.orgzly.org.OrgHead
+import com.orgzly.org.OrgProperties
+import com.orgzly.org.datetime.OrgRange
 import com.orgzly.org.parser.OrgParserSettings
 import com.orgzly.org.parser.OrgParserWriter
 import java.io.File
@@ -36,19 +41,130 @@ class NotesOrgExporter(val dataRepository: DataRepository) {
         // Write preface
         writer.write(orgWriter.whiteSpacedFilePreface(book.preface))
 
-        // Write each note
-        dataRepository.getNotes(book.name).forEach { noteView ->
-            val note = noteView.note
+        val isIndented = book.isIndented == true
+
+        val settings = cacheKey(orgParserSettings, isIndented)
+
+        /*
+         * Write each note as it is read, merging in its properties as both are ordered by position.
+         * Notes unchanged since the last export are written as they were then.
+         */
+        dataRepository.getBookNotesForExportCursor(book.id, settings).use { notesCursor ->
+            dataRepository.getBookNotePropertiesCursor(book.id).use { propertiesCursor ->
+                dataRepository.getNoteExportCacheWriter(settings).use { cache ->
+                    val notes = NotesReader(notesCursor)
+                    val notesProperties = PropertiesMerger(propertiesCursor)
+
+                    while (notesCursor.moveToNext()) {
+                        val text = notes.cachedText() ?: run {
+                            val head = notes.head().apply {
+                                properties = notesProperties.next(notes.id(), notes.lft())
+                            }
+
+                            orgWriter.whiteSpacedHead(head, notes.level(), isIndented).also {
+                                cache.put(notes.id(), notes.generation(), it)
+                            }
+                        }
+
+                        writer.write(text)
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps the current row of the cursor to [OrgHead], same as [OrgMapper.toOrgHead].
+     */
+    private class NotesReader(private val cursor: Cursor) {
+        private val idColumn = cursor.getColumnIndexOrThrow("id")
+        private val lftColumn = cursor.getColumnIndexOrThrow("lft")
+        private val levelColumn = cursor.getColumnIndexOrThrow("level")
+        private val generationColumn = cursor.getColumnIndexOrThrow("generation")
+        private val titleColumn = cursor.getColumnIndexOrThrow("title")
+        private val tagsColumn = cursor.getColumnIndexOrThrow("tags")
+        private val stateColumn = cursor.getColumnIndexOrThrow("state")
+        private val priorityColumn = cursor.getColumnIndexOrThrow("priority")
+        private val contentColumn = cursor.getColumnIndexOrThrow("content")
+        private val scheduledColumn = cursor.getColumnIndexOrThrow("scheduled_range_string")
+        private val deadlineColumn = cursor.getColumnIndexOrThrow("deadline_range_string")
+        private val closedColumn = cursor.getColumnIndexOrThrow("closed_range_string")
+        private val clockColumn = cursor.getColumnIndexOrThrow("clock_range_string")
+        private val cachedTextColumn = cursor.getColumnIndexOrThrow("cached_text")
+
+        fun id() = cursor.getLong(idColumn)
+
+        fun lft() = cursor.getLong(lftColumn)
+
+        fun level() = cursor.getInt(levelColumn)
+
+        fun generation() = cursor.getLong(generationColumn)
+
+        fun cachedText(): String? = cursor.getString(cachedTextColumn)
+
+        fun head(): OrgHead {
+            return OrgHead().apply {
+                title = cursor.getString(titleColumn)
+
+                setTags(Note.dbDeSerializeTags(cursor.getString(tagsColumn)).toTypedArray())
+
+                state = cursor.getString(stateColumn)
+
+                priority = cursor.getString(priorityColumn)
 
-            val head = OrgMapper.toOrgHead(noteView).apply {
-                properties = OrgMapper.toOrgProperties(dataRepository.getNoteProperties(note.id))
+                scheduled = cursor.getString(scheduledColumn)?.let { OrgRange.parse(it) }
+                deadline = cursor.getString(deadlineColumn)?.let { OrgRange.parse(it) }
+                closed = cursor.getString(closedColumn)?.let { OrgRange.parse(it) }
+                clock = cursor.getString(clockColumn)?.let { OrgRange.parse(it) }
+
+                content = cursor.getString(contentColumn)
+            }
+        }
+    }
+
+    /**
+     * Reads properties of consecutive notes from a cursor ordered the same way as notes.
+     * Rows of notes which are not exported (e.g. deleted in the meantime) are skipped.
+     */
+    private class PropertiesMerger(private val cursor: Cursor) {
+        private val noteIdColumn = cursor.getColumnIndexOrThrow("note_id")
+        private val noteLftColumn = cursor.getColumnIndexOrThrow("note_lft")
+        private val nameColumn = cursor.getColumnIndexOrThrow("name")
+        private val valueColumn = cursor.getColumnIndexOrThrow("value")
+
+        private var hasRow = cursor.moveToFirst()
+
+        fun next(noteId: Long, noteLft: Long): OrgProperties {
+            val properties = OrgProperties()
+
+            while (hasRow && cursor.getLong(noteLftColumn) < noteLft) {
+                hasRow = cursor.moveToNext()
             }
 
-            writer.write(orgWriter.whiteSpacedHead(head, note.position.level, book.isIndented == true))
+            while (hasRow && cursor.getLong(noteIdColumn) == noteId) {
+                properties.put(cursor.getString(nameColumn), cursor.getString(valueColumn))
+                hasRow = cursor.moveToNext()
+            }
+
+            return properties
         }
     }
 
     companion object {
+        /**
+         * Everything other than the note itself which affects how it is written.
+         */
+        private fun cacheKey(settings: OrgParserSettings, isIndented: Boolean): String {
+            return listOf(
+                    settings.separateNotesWithNewLine,
+                    settings.separateHeaderAndContentWithNewLine,
+                    settings.tagsColumn,
+                    settings.orgIndentMode,
+                    settings.orgIndentIndentationPerLevel,
+                    isIndented
+            ).joinToString("|")
+        }
+
         private fun getOrgParserSettingsFromPreferences(): OrgParserSettings {
             val parserSettings = OrgParserSettings.getBasic()
 
@@ -1,14 +1,15 @@
 package com.orgzly.android.data
 
-import android.annotation.SuppressLint
 import android.content.Context
 import android.content.Intent
 import android.content.res.Resources
+import android.database.Cursor
 import android.media.MediaScannerConnection
 import android.net.Uri
 import android.os.Handler
 import android.text.TextUtils
 import androidx.lifecycle.LiveData
+import androidx.lifecycle.MediatorLiveData
 import androidx.lifecycle.MutableLiveData
 import androidx.lifecycle.Transformations
 import androidx.localbroadcastmanager.content.LocalBroadcastManager
@@ -18,17 +19,28 @@ import com.orgzly.BuildConfig
 import com.orgzly.R
 import com.orgzly.android.*
 import com.orgzly.android.data.mappers.OrgMapper
+import com.orgzly.android.db.NestedSetAncestry
+import com.orgzly.android.db.NoteExportCacheWriter
+import com.orgzly.android.db.NotesBatchWriter
 import com.orgzly.android.db.NotesClipboard
+import com.orgzly.android.db.OrgRangeCache
 import com.orgzly.android.db.OrgzlyDatabase
+import com.orgzly.android.db.dao.AgendaOccurrenceDao
 import com.orgzly.android.db.dao.NoteDao
 import com.orgzly.android.db.dao.NoteViewDao
+import com.orgzly.android.db.dao.ReminderScheduleDao
 import com.orgzly.android.db.dao.ReminderTimeDao
 import com.orgzly.android.db.entity.*
 import com.orgzly.android.db.mappers.OrgTimestampMapper
 import com.orgzly.android.prefs.AppPreferences
 import com.orgzly.android.query.Query
+import com.orgzly.android.query.sql.CompiledQuery
+import com.orgzly.android.query.sql.CompiledQueryCache
+import com.orgzly.android.query.sql.QueryResultCache
+import com.orgzly.android.query.sql.SqlQuery
 import com.orgzly.android.query.sql.SqliteQueryBuilder
 import com.orgzly.android.query.user.InternalQueryParser
+import com.orgzly.android.reminders.NoteReminders
 import com.orgzly.android.repos.*
 import com.orgzly.android.repos.Rook
 import com.orgzly.android.repos.VersionedRook
@@ -38,6 +50,7 @@ import com.orgzly.android.ui.NotePlace
 import com.orgzly.android.ui.Place
 import com.orgzly.android.ui.note.NoteBuilder
 import com.orgzly.android.ui.note.NotePayload
+import com.orgzly.android.ui.notes.query.agenda.AgendaItems
 import com.orgzly.android.usecase.RepoCreate
 import com.orgzly.android.util.*
 import com.orgzly.org.OrgActiveTimestamps
@@ -51,10 +64,13 @@ import com.orgzly.org.parser.OrgNodeInSet
 import com.orgzly.org.parser.OrgParser
 import com.orgzly.org.parser.OrgParserWriter
 import com.orgzly.org.utils.StateChangeLogic
+import org.joda.time.DateTime
 import java.io.*
 import java.lang.IllegalStateException
+import java.nio.charset.MalformedInputException
 import java.util.*
 import java.util.concurrent.Callable
+import java.util.concurrent.atomic.AtomicInteger
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -67,6 +83,10 @@ class DataRepository @Inject constructor(
         private val resources: Resources,
         private val localStorage: LocalStorage) {
 
+    private val compiledQueries = CompiledQueryCache(context)
+
+    private val queryResults = QueryResultCache()
+
     fun forceLoadBook(bookId: Long) {
         val book = getBookView(bookId)
                 ?: throw IOException(resources.getString(R.string.book_does_not_exist_anymore))
@@ -137,6 +157,7 @@ class DataRepository @Inject constructor(
     /**
      * Exports `Book`, uploads it to repo and link it to newly created
      * [com.orgzly.android.repos.VersionedRook].
+     * Book in the repo is overwritten, even if it changed since it was last seen.
      *
      * @return [Book]
      * @throws IOException
@@ -148,27 +169,54 @@ class DataRepository @Inject constructor(
             bookView: BookView,
             @Suppress("UNUSED_PARAMETER") format: BookFormat) {
 
-        val uploadedBook: VersionedRook
+        storeUploadedBook(uploadBookToRepo(repoEntity, fileName, bookView, force = true))
+    }
 
+    /**
+     * Exports and uploads the book, without updating the database.
+     * Safe to call concurrently, uploaded book is then linked using [storeUploadedBook].
+     *
+     * Unless [force] is set, repositories which can tell refuse to overwrite
+     * a book changed remotely since it was last seen.
+     */
+    @JvmOverloads
+    @Throws(IOException::class)
+    fun uploadBookToRepo(repoEntity: Repo, fileName: String, bookView: BookView, force: Boolean = false): UploadedBook {
         val repo = getRepoInstance(repoEntity.id, repoEntity.type, repoEntity.url)
 
+        val generation = db.book().get(bookView.book.id)?.generation ?: bookView.book.generation
+
         val tmpFile = getTempBookFile()
         try {
             /* Write to temporary file. */
             NotesOrgExporter(this).exportBook(bookView.book, tmpFile)
 
             /* Upload to repo. */
-            uploadedBook = repo.storeBook(tmpFile, fileName)
+            val vrook = if (force && repo is WebdavRepo) {
+                repo.storeBook(tmpFile, fileName, false)
+            } else {
+                repo.storeBook(tmpFile, fileName)
+            }
+
+            return UploadedBook(bookView.book.id, generation, vrook)
 
         } finally {
             /* Delete temporary file. */
             tmpFile.delete()
         }
+    }
 
-        updateBookLinkAndSync(bookView.book.id, uploadedBook)
-
-        updateBookIsModified(bookView.book.id, false)
+    /**
+     * Links the uploaded book. It stays modified if it changed after being exported.
+     */
+    fun storeUploadedBook(book: UploadedBook) {
+        db.runInTransaction {
+            updateBookLinkAndSync(book.bookId, book.vrook)
 
+            if (db.book().get(book.bookId)?.generation == book.generation) {
+                updateBookIsModified(book.bookId, false)
+            }
+        }
     }
 
     @Throws(IOException::class)
@@ -697,6 +745,8 @@ class DataRepository @Inject constructor(
 
             lastNoteId = db.note().insert(note)
 
+            db.note().updatePlanningTimes(lastNoteId)
+
             val properties = OrgProperties().apply {
                 entry.properties.forEach {
                     put(it.name, it.value)
@@ -705,6 +755,7 @@ class DataRepository @Inject constructor(
 
             insertNoteProperties(lastNoteId, properties)
             insertNoteEvents(lastNoteId, note.title, note.content)
+            db.noteTag().replaceOwn(lastNoteId, Note.dbDeSerializeTags(note.tags))
 
             idsMap[entry.note.id] = lastNoteId
 
@@ -713,7 +764,10 @@ class DataRepository @Inject constructor(
             if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Inserted $lastNoteId $note")
         }
 
+        db.book().incrementGeneration(targetNote.position.bookId)
+
         db.noteAncestor().insertAncestorsForNotes(pastedNoteIds)
+        db.noteTag().updateInheritedForSubtrees(pastedNoteIds)
 
         // Update descendants count for the target note and its ancestors
         db.note().updateDescendantsCountForNoteAndAncestors(listOf(targetNote.id))
@@ -864,8 +918,9 @@ class DataRepository @Inject constructor(
             sourceBookIds.add(note.position.bookId)
         }
 
-        // Update note ancestors table
+        // Update note ancestors and inherited tags
         db.noteAncestor().insertAncestorsForNotes(ids)
+        db.noteTag().updateInheritedForSubtrees(ids)
 
         db.note().updateDescendantsCountForAncestors(selectedIds)
 
@@ -1152,26 +1207,166 @@ class DataRepository @Inject constructor(
         }
     }
 
+    /*
+     * Every change of a note changes generation of its book,
+     * so the query is evaluated again (or its cached results reused) after every change of books.
+     */
     fun selectNotesFromQueryLiveData(queryString: String): LiveData<List<NoteView>> {
-        val parser = InternalQueryParser()
+        val query = InternalQueryParser().parse(queryString)
 
-        val query = parser.parse(queryString)
+        val result = MediatorLiveData<List<NoteView>>()
 
-        val sqlQuery = buildSqlQuery(query)
+        val latestRun = AtomicInteger()
+
+        result.addSource(db.book().getGenerationsLiveData()) {
+            val run = latestRun.incrementAndGet()
+
+            App.EXECUTORS.diskIO().execute {
+                val notes = selectNotesFromQuery(query)
+
+                if (run == latestRun.get()) {
+                    result.postValue(notes)
+                }
+            }
+        }
 
-        return db.noteView().runQueryLiveData(sqlQuery)
+        return result
     }
 
+    /**
+     * Results are shared with other callers evaluating the same query,
+     * until one of the books the query can match changes.
+     */
     fun selectNotesFromQuery(query: Query): List<NoteView> {
         val sqlQuery = buildSqlQuery(query)
 
+        /* Uncommitted changes could still be rolled back. */
+        if (db.inTransaction()) {
+            return runQuery(query, sqlQuery)
+        }
+
+        return queryResults.getOrRun(query, sqlQuery, getQueryFingerprint(query)) {
+            runQuery(query, sqlQuery)
+        }
+    }
+
+    private fun runQuery(query: Query, sqlQuery: SupportSQLiteQuery): List<NoteView> {
+        if (query.isAgenda()) {
+            refreshAgendaOccurrences(query.options.agendaDays)
+        }
+
         return db.noteView().runQuery(sqlQuery)
     }
 
+    /**
+     * Generations of all books which can have notes matching the query.
+     * Results of the query can only change when this changes, or when they expire
+     * (see [QueryResultCache.expiresAt]).
+     */
+    fun getQueryFingerprint(query: Query): Map<Long, Long> {
+        val bookNames = QueryResultCache.bookNames(query.condition)
+
+        return db.book().getGenerations()
+                .filter { bookNames == null || bookNames.contains(it.name) }
+                .associate { it.id to it.generation }
+    }
+
+    /**
+     * Expands occurrences of notes' active times, for notes changed since they were
+     * last expanded, or for all notes once a day. Returns true if anything was updated.
+     */
+    fun refreshAgendaOccurrences(days: Int): Boolean {
+        val today = DateTime.now().withTimeAtStartOfDay()
+
+        val horizonDays = maxOf(days, AGENDA_HORIZON_DAYS)
+
+        val requiredEnd = today.plusDays(days).millis
+
+        return db.runInTransaction(Callable {
+            val dao = db.agendaOccurrence()
+
+            var updated = dao.deleteStale(today.millis, requiredEnd) > 0
+
+            updated = dao.deleteStaleNotes(today.millis, requiredEnd) > 0 || updated
+
+            val ranges = dao.getUnexpandedRanges()
+
+            if (ranges.isNotEmpty()) {
+                dao.insert(ranges.flatMap { expandAgendaRange(it, today, horizonDays) })
+
+                val horizonEnd = today.plusDays(horizonDays).millis
+
+                dao.insertNotes(ranges.associate {
+                    it.noteId to AgendaNote(it.noteId, it.generation, today.millis, horizonEnd)
+                }.values)
+
+                updated = true
+            }
+
+            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Expanded ${ranges.size} agenda ranges")
+
+            updated
+        })
+    }
+
+    private fun expandAgendaRange(
+            range: AgendaOccurrenceDao.Range, today: DateTime, days: Int): List<AgendaOccurrence> {
+
+        val orgRange = OrgRangeCache.parse(range.string) ?: return emptyList()
+
+        if (!orgRange.startTime.isActive) {
+            return emptyList()
+        }
+
+        val timeType = AgendaItems.timeType(range.timeType) ?: return emptyList()
+
+        val times = AgendaUtils.expandOrgDateTime(
+                AgendaItems.ExpandableOrgRange.fromRange(timeType, orgRange), today, days)
+
+        val occurrences = times.expanded.mapTo(mutableListOf()) { time ->
+            AgendaOccurrence(range.noteId, range.timeType, range.orgRangeId, time.withTimeAtStartOfDay().millis, false)
+        }
+
+        if (times.isOverdueToday) {
+            occurrences.add(AgendaOccurrence(range.noteId, range.timeType, range.orgRangeId, today.millis, true))
+        }
+
+        return occurrences
+    }
+
+    /**
+     * IDs of all notes matching the query, in the order they are displayed.
+     * Notes themselves are then loaded only as they are needed, using [selectNotes].
+     */
+    fun selectNoteIdsFromQueryLiveData(queryString: String): LiveData<List<Long>> {
+        val query = InternalQueryParser().parse(queryString)
+
+        val sqlQuery = compiledQueries.getOrCompile(query, ID_COLUMNS) {
+            compileSqlQuery(it, ID_COLUMNS)
+        }
+
+        return db.noteView().runIdsQueryLiveData(sqlQuery)
+    }
+
+    /**
+     * Notes with specified IDs, in the same order. Missing notes are skipped.
+     */
+    fun selectNotes(ids: List<Long>): List<NoteView> {
+        val notes = ids.chunked(OrgzlyDatabase.SQLITE_MAX_VARIABLE_NUMBER).flatMap { chunk ->
+            db.noteView().get(chunk)
+        }.associateBy { it.note.id }
+
+        return ids.mapNotNull { notes[it] }
+    }
+
     private fun buildSqlQuery(query: Query): SupportSQLiteQuery {
+        return compiledQueries.getOrCompile(query) { compileSqlQuery(it) }
+    }
+
+    private fun compileSqlQuery(query: Query, columns: Array<String>? = null): CompiledQuery {
         val queryBuilder = SqliteQueryBuilder(context)
 
-        val (selection, selectionArgs, having, orderBy) = queryBuilder.build(query)
+        val (selection, arguments, having, orderBy) = queryBuilder.build(query)
 
         val s = mutableListOf<String>()
 
@@ -1179,36 +1374,70 @@ class DataRepository @Inject constructor(
             s.add(selection)
         }
 
-        if (query.options.agendaDays > 0) {
-            s.add("((scheduled_range_id IS NOT NULL AND scheduled_is_active = 1) OR (deadline_range_id IS NOT NULL AND deadline_is_active = 1) OR event_timestamp IS NOT NULL)")
-        }
-
-        if (!s.isEmpty() || !query.sortOrders.isEmpty()) {
+        if (!s.isEmpty() || !query.sortOrders.isEmpty() || query.isAgenda()) {
             s.add(NoteDao.WHERE_EXISTING_NOTES)
         }
 
         val selection2 = if (s.isEmpty()) "0" else TextUtils.join(" AND ", s)
 
-        // For agenda, group by event timestamp too
-        val groupBy = if (query.isAgenda()) {
-            "id, event_timestamp"
-        } else {
-            "id"
+        if (query.isAgenda() && columns == null) {
+            return compileAgendaQuery(query, selection2, arguments, having, orderBy)
         }
 
-        val supportQuery = SupportSQLiteQueryBuilder
+        val sql = SupportSQLiteQueryBuilder
                 .builder("(${NoteViewDao.QUERY_WITH_NOTE_EVENTS})")
-                .selection(selection2, selectionArgs.toTypedArray())
-                .groupBy(groupBy)
+                .columns(columns)
+                .selection(selection2, null)
+                .groupBy("id")
                 .having(having)
                 .orderBy(orderBy)
                 .create()
+                .sql
+
+        if (BuildConfig.LOG_DEBUG)
+            LogUtils.d(TAG, "Compiled query $query with arguments $arguments\n$sql")
+
+        return CompiledQuery(sql, arguments)
+    }
+
+    /*
+     * One row per note's occurrence in the agenda's day window (or overdue today).
+     * Events are only matched with their own occurrences, so that conditions on events apply.
+     */
+    private fun compileAgendaQuery(
+            query: Query,
+            selection: String,
+            arguments: List<SqlQuery.Argument>,
+            having: String,
+            orderBy: String): CompiledQuery {
+
+        val window = "((o.is_overdue = 0 AND o.day >= ? AND o.day < ?) OR (o.is_overdue = 1 AND o.day = ?))"
+
+        val today = SqlQuery.Argument.TimeFromNow(Calendar.DAY_OF_MONTH, 0, false)
+
+        val windowArguments = listOf(
+                today,
+                SqlQuery.Argument.TimeFromNow(Calendar.DAY_OF_MONTH, query.options.agendaDays, false),
+                today)
+
+        val sql = SupportSQLiteQueryBuilder
+                .builder("""
+                    (${NoteViewDao.QUERY_WITH_NOTE_EVENTS}) n
+                    JOIN agenda_occurrences o ON o.note_id = n.id
+                    AND (o.time_type != ${AgendaOccurrence.EVENT} OR o.org_range_id = n.event_range_id)
+                """)
+                .columns(AGENDA_COLUMNS)
+                .selection("$selection AND $window", null)
+                .groupBy("n.id, o.time_type, o.org_range_id, o.day, o.is_overdue")
+                .having(having)
+                .orderBy(if (orderBy.isNotEmpty()) "$orderBy, agenda_time_type" else "agenda_time_type")
+                .create()
+                .sql
 
         if (BuildConfig.LOG_DEBUG)
-            LogUtils.d(TAG, "Selecting notes using query $query "
-                    + "with selection args $selectionArgs\n${supportQuery.sql}")
+            LogUtils.d(TAG, "Compiled agenda query $query with arguments $arguments\n$sql")
 
-        return supportQuery
+        return CompiledQuery(sql, arguments + windowArguments)
     }
 
     fun getNotes(bookName: String): List<NoteView> {
@@ -1296,6 +1525,26 @@ class DataRepository @Inject constructor(
         return db.noteProperty().get(noteId)
     }
 
+    /**
+     * Cursor over book's notes, ordered by position, with only the columns needed for export.
+     * Notes exported before using the same [settings] and unchanged since have cached_text set.
+     */
+    fun getBookNotesForExportCursor(bookId: Long, settings: String): Cursor {
+        return db.note().getForExportCursor(bookId, settings)
+    }
+
+    fun getNoteExportCacheWriter(settings: String): NoteExportCacheWriter {
+        return NoteExportCacheWriter(db, settings)
+    }
+
+    /**
+     * Cursor over properties of all book's notes, ordered by note position.
+     * Columns are note_id, note_lft, name and value.
+     */
+    fun getBookNotePropertiesCursor(bookId: Long): Cursor {
+        return db.noteProperty().getForBookCursor(bookId)
+    }
+
     private fun setNoteProperty(noteId: Long, name: String, value: String) {
         db.noteProperty().upsert(noteId, name, value)
     }
@@ -1461,16 +1710,23 @@ class DataRepository @Inject constructor(
                 getOrgRangeId(notePayload.deadline),
                 getOrgRangeId(notePayload.closed),
                 null,
-                newNotePosition)
+                position = newNotePosition)
 
 
         val noteId = db.note().insert(noteEntity)
 
+        db.book().incrementGeneration(target.bookId)
+
+        db.note().updatePlanningTimes(noteId)
+
         replaceNoteProperties(noteId, notePayload.properties)
         replaceNoteEvents(noteId, notePayload.title, notePayload.content)
 
         db.noteAncestor().insertAncestorsForNote(noteId)
 
+        db.noteTag().replaceOwn(noteId, Note.dbDeSerializeTags(noteEntity.tags))
+        db.noteTag().updateInheritedForSubtrees(setOf(noteId))
+
         updateBookIsModified(target.bookId, true, time)
 
         return noteEntity.copy(id = noteId)
@@ -1533,6 +1789,11 @@ class DataRepository @Inject constructor(
 
             val count = db.note().update(newNote)
 
+            if (newNote.tags != note.tags) {
+                db.noteTag().replaceOwn(noteId, Note.dbDeSerializeTags(newNote.tags))
+                db.noteTag().updateInheritedForSubtrees(setOf(noteId))
+            }
+
             if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Updated $count note: $newNote")
 
             newNote
@@ -1564,21 +1825,32 @@ class DataRepository @Inject constructor(
     }
 
     private fun insertNoteEvents(noteId: Long, title: String, content: String?) {
-        if (title.isNotEmpty()) {
-            parseAndInsertEvents(noteId, title)
+        parseEvents(title, content) { orgRangeId ->
+            db.noteEvent().replace(NoteEvent(noteId, orgRangeId))
         }
+    }
 
-        if (!content.isNullOrEmpty()) {
-            parseAndInsertEvents(noteId, content)
+    /**
+     * Parses active timestamps from title and content, passing their range IDs to [action].
+     */
+    private fun parseEvents(title: String, content: String?, action: (Long) -> Unit) {
+        parseEvents(title, content).forEach { range ->
+            getOrgRangeId(range)?.let(action)
         }
     }
 
-    private fun parseAndInsertEvents(noteId: Long, str: String) {
-        OrgActiveTimestamps.parse(str).forEach { range ->
-            getOrgRangeId(range)?.let { orgRangeId ->
-                db.noteEvent().replace(NoteEvent(noteId, orgRangeId))
-            }
+    private fun parseEvents(title: String, content: String?): List<OrgRange> {
+        val ranges = ArrayList<OrgRange>()
+
+        if (title.isNotEmpty()) {
+            ranges.addAll(OrgActiveTimestamps.parse(title))
         }
+
+        if (!content.isNullOrEmpty()) {
+            ranges.addAll(OrgActiveTimestamps.parse(content))
+        }
+
+        return ranges
     }
 
     /**
@@ -1621,6 +1893,45 @@ class DataRepository @Inject constructor(
         return book
     }
 
+    /**
+     * Downloads and parses the book, without writing it to the database.
+     * Safe to call concurrently, parsed book is then written using [storeParsedBook].
+     */
+    @Throws(IOException::class)
+    fun parseBookFromRepo(rook: Rook): ParsedBook {
+        val fileName = BookName.getFileName(context, rook.uri)
+
+        val repo = getRepoInstance(rook.repoId, rook.repoType, rook.repoUri.toString())
+
+        val tmpFile = getTempBookFile()
+        try {
+            /* Download from repo. */
+            val vrook = repo.retrieveBook(fileName, tmpFile)
+
+            val bookName = BookName.fromFileName(fileName)
+
+            return parseBookFromFile(tmpFile.path, bookName.name, vrook, selectedEncoding(null))
+
+        } finally {
+            tmpFile.delete()
+        }
+    }
+
+    /**
+     * Writes the parsed book to the database in its own transaction,
+     * replacing the existing book with the same name.
+     */
+    fun storeParsedBook(book: ParsedBook): BookView? {
+        val bookId = db.runInTransaction(Callable {
+            writeBook(book.name, book.vrook, book.encoding) { onNote, onFile ->
+                book.notes.forEach(onNote)
+                onFile(book.file)
+            }
+        })
+
+        return getBookView(bookId)
+    }
+
     @Throws(IOException::class)
     fun loadBookFromStream(name: String, format: BookFormat, inputStream: InputStream): BookView? {
         /* Save content to temporary file. */
@@ -1645,15 +1956,17 @@ class DataRepository @Inject constructor(
             selectedEncoding: String? = null
     ): BookView? {
 
-        val encoding = if (selectedEncoding == null && AppPreferences.forceUtf8(context)) {
+        val bookId = loadBookFromFile(file.path, name, vrook, selectedEncoding(selectedEncoding))
+
+        return getBookView(bookId)
+    }
+
+    private fun selectedEncoding(selectedEncoding: String?): String? {
+        return if (selectedEncoding == null && AppPreferences.forceUtf8(context)) {
             "UTF-8"
         } else {
             selectedEncoding
         }
-
-        val bookId = loadBookFromFile(file.path, name, vrook, encoding)
-
-        return getBookView(bookId)
     }
 
     private fun loadBookFromFile(
@@ -1663,16 +1976,11 @@ class DataRepository @Inject constructor(
             selectedEncoding: String?): Long {
 
         try {
-            val encoding = Encoding.detect(filePath, selectedEncoding)
-
-            return db.runInTransaction(Callable {
-                loadBookFromReader(
-                        bookName,
-                        vrook,
-                        InputStreamReader(FileInputStream(File(filePath)), encoding.used),
-                        encoding
-                )
-            })
+            return readBookFile(filePath, selectedEncoding) { reader, encoding ->
+                db.runInTransaction(Callable {
+                    loadBookFromReader(bookName, vrook, reader, encoding)
+                })
+            }
 
         } catch (e: IOException) {
             e.printStackTrace()
@@ -1685,35 +1993,70 @@ class DataRepository @Inject constructor(
     }
 
     @Throws(IOException::class)
-    private fun loadBookFromReader(
+    private fun parseBookFromFile(
+            filePath: String,
             bookName: String,
             vrook: VersionedRook?,
-            inReader: Reader,
-            encoding: Encoding): Long {
+            selectedEncoding: String?): ParsedBook {
 
-        val startedAt = System.currentTimeMillis()
+        return readBookFile(filePath, selectedEncoding) { reader, encoding ->
+            val notes = ArrayList<ParsedNote>()
+            var orgFile: OrgFile? = null
 
-        if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Loading book $bookName...")
+            parseBook(reader, { notes.add(it) }, { orgFile = it })
 
-        val bookId = db.book().getOrInsert(bookName)
+            ParsedBook(bookName, vrook, encoding, orgFile!!, notes)
+        }
+    }
 
-        // Delete all notes from this book
-        db.note().deleteByBookId(bookId)
+    /**
+     * Opens the file with detected or selected encoding and passes the reader to [read].
+     *
+     * If the sample used for detection is not conclusive and the file turns out not to be
+     * in UTF-8, encoding is detected using the whole file and [read] is called again.
+     */
+    @Throws(IOException::class)
+    private fun <T> readBookFile(filePath: String, selectedEncoding: String?, read: (Reader, Encoding) -> T): T {
+        val sampled = Encoding.sample(File(filePath), selectedEncoding)
 
-        /*
-         * Maps node's lft to database id.
-         * Used to update parent id and insert ancestors.
-         * Not using SparseArray as speed is preferred over memory here.
-         */
-        @SuppressLint("UseSparseArrays") val lft2id = HashMap<Long, Long>()
+        return try {
+            read(sampled.reader(), sampled.encoding)
 
-        /* Set of ids for which parent is already set. */
-        val notesWithParentSet = HashSet<Long>()
+        } catch (e: MalformedInputException) {
+            if (sampled.isConclusive) {
+                throw e
+            }
 
+            /* Non-UTF-8 input found after the UTF-8 sample - detect using the whole file. */
+            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Sample of $filePath was not conclusive, detecting encoding using the whole file")
+
+            val encoding = Encoding.detect(filePath, selectedEncoding)
 
+            read(InputStreamReader(FileInputStream(File(filePath)), encoding.used), encoding)
+        }
+    }
+
+    @Throws(IOException::class)
+    private fun loadBookFromReader(
+            bookName: String,
+            vrook: VersionedRook?,
+            inReader: Reader,
+            encoding: Encoding): Long {
+
+        /* Notes are written as they are parsed. */
+        return writeBook(bookName, vrook, encoding) { onNote, onFile ->
+            parseBook(inReader, onNote, onFile)
+        }
+    }
+
+    /**
+     * Parses the book, passing each note to [onParsedNote] as soon as it is parsed.
+     * Does not access the database.
+     */
+    @Throws(IOException::class)
+    private fun parseBook(inReader: Reader, onParsedNote: (ParsedNote) -> Unit, onParsedFile: (OrgFile) -> Unit) {
         val useCreatedAtProperty = AppPreferences.createdAt(context)
         val createdAtProperty = AppPreferences.createdAtProperty(context)
-        val startFolded = AppPreferences.notebooksStartFolded(context)
 
         BufferedReader(inReader).use { reader ->
             /*
@@ -1727,105 +2070,152 @@ class DataRepository @Inject constructor(
                     .setListener(object : OrgNestedSetParserListener {
                         @Throws(IOException::class)
                         override fun onNode(node: OrgNodeInSet) {
+                            val content = if (node.head.hasContent()) node.head.content else null
 
-                            val scheduledRangeId = getOrgRangeId(node.head.scheduled)
-                            val deadlineRangeId = getOrgRangeId(node.head.deadline)
-                            val closedRangeId = getOrgRangeId(node.head.closed)
-                            val clockRangeId = getOrgRangeId(node.head.clock)
-
-                            var content: String? = null
-                            var contentLineCount = 0
-
-                            if (node.head.hasContent()) {
-                                content = node.head.content
-                                contentLineCount = MiscUtils.lineCount(node.head.content)
-                            }
-
-                            val position = NotePosition(
-                                    bookId = bookId,
-                                    lft = node.lft,
-                                    rgt = node.rgt,
-                                    level = node.level,
-                                    parentId = 0,
-                                    foldedUnderId = 0,
-                                    isFolded = startFolded && node.level > 0,
-                                    descendantsCount = node.descendantsCount)
-
-                            val note = Note(
-                                    0,
-                                    title = node.head.title,
-                                    priority = node.head.priority,
-                                    state = node.head.state,
-                                    scheduledRangeId = scheduledRangeId,
-                                    deadlineRangeId = deadlineRangeId,
-                                    closedRangeId = closedRangeId,
-                                    clockRangeId = clockRangeId,
-                                    tags = if (node.head.hasTags()) Note.dbSerializeTags(node.head.tags) else null,
-                                    createdAt = getCreatedAtFromProperty(node, useCreatedAtProperty, createdAtProperty),
-                                    content = content,
-                                    contentLineCount = contentLineCount,
-                                    position = position
-                            )
-
-                            val noteId = db.note().insert(note)
-
-                            insertNoteProperties(noteId, node.head.properties)
-                            insertNoteEvents(noteId, note.title, note.content)
-
-                            /*
-                             * Update notes' parent IDs and insert ancestors.
-                             * Going through all descendants - nodes between lft and rgt.
-                             *
-                             *  lft:  1    2    3    4    5   6
-                             *            L2   l1   r2   R2
-                             */
-                            lft2id[node.lft] = noteId
-                            for (index in node.lft + 1 until node.rgt) {
-                                val descendantId = lft2id[index]
-                                if (descendantId != null) {
-                                    if (!notesWithParentSet.contains(descendantId)) {
-                                        db.note().updateParentForNote(descendantId, noteId)
-
-                                        if (startFolded && position.level > 0) {
-                                            db.note().setFoldedUnder(descendantId, noteId)
-                                        }
-
-                                        notesWithParentSet.add(descendantId)
-                                    }
-
-                                    db.noteAncestor().insert(NoteAncestor(
-                                            noteId = descendantId,
-                                            bookId = bookId,
-                                            ancestorNoteId = noteId))
-                                }
-                            }
+                            onParsedNote(ParsedNote(
+                                    node,
+                                    getCreatedAtFromProperty(node, useCreatedAtProperty, createdAtProperty),
+                                    parseEvents(node.head.title, content)))
                         }
 
                         @Throws(IOException::class)
                         override fun onFile(file: OrgFile) {
-                            val book = Book(
-                                    bookId,
-                                    bookName,
-                                    mtime = vrook?.mtime, // Set book's mtime to remote book's
-                                    preface = file.preface, // TODO: Move to and rename OrgFileSettings
-                                    isIndented = file.settings.isIndented,
-                                    title = file.settings.title,
-                                    isDummy = false,
-                                    usedEncoding = encoding.used,
-                                    detectedEncoding = encoding.detected,
-                                    selectedEncoding = encoding.selected
-                            )
-
-                            db.book().update(book)
+                            onParsedFile(file)
                         }
-
                     })
                     .build()
                     .parse()
         }
+    }
+
+    /**
+     * Replaces notes of the book with the ones passed by [parse].
+     * Notes must be passed in the order they are emitted by the parser.
+     */
+    @Throws(IOException::class)
+    private fun writeBook(
+            bookName: String,
+            vrook: VersionedRook?,
+            encoding: Encoding,
+            parse: (onNote: (ParsedNote) -> Unit, onFile: (OrgFile) -> Unit) -> Unit): Long {
+
+        val startedAt = System.currentTimeMillis()
+
+        if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Loading book $bookName...")
+
+        val bookId = db.book().getOrInsert(bookName)
+
+        // Delete all notes from this book
+        db.note().deleteByBookId(bookId)
+
+        /* Resolves parent and ancestors of each note, as notes are received after their descendants. */
+        val ancestry = NestedSetAncestry()
+
+        val startFolded = AppPreferences.notebooksStartFolded(context)
+
+        NotesBatchWriter(db).use { writer ->
+            parse({ parsedNote ->
+                val node = parsedNote.node
+
+                val scheduledRangeId = getOrgRangeId(node.head.scheduled)
+                val deadlineRangeId = getOrgRangeId(node.head.deadline)
+                val closedRangeId = getOrgRangeId(node.head.closed)
+                val clockRangeId = getOrgRangeId(node.head.clock)
+
+                var content: String? = null
+                var contentLineCount = 0
+
+                if (node.head.hasContent()) {
+                    content = node.head.content
+                    contentLineCount = MiscUtils.lineCount(node.head.content)
+                }
+
+                ancestry.add(node.lft, node.rgt)
+
+                val noteId = writer.firstNoteId + ancestry.rank
+
+                val parentId = if (ancestry.depth > 0) {
+                    writer.firstNoteId + ancestry.parentRank
+                } else {
+                    0
+                }
+
+                /* Notes are folded under their parent, unless parent is the root. */
+                val foldedUnderId = if (startFolded && ancestry.depth > 1) parentId else 0
+
+                val position = NotePosition(
+                        bookId = bookId,
+                        lft = node.lft,
+                        rgt = node.rgt,
+                        level = node.level,
+                        parentId = parentId,
+                        foldedUnderId = foldedUnderId,
+                        isFolded = startFolded && node.level > 0,
+                        descendantsCount = node.descendantsCount)
+
+                val note = Note(
+                        noteId,
+                        title = node.head.title,
+                        priority = node.head.priority,
+                        state = node.head.state,
+                        scheduledRangeId = scheduledRangeId,
+                        deadlineRangeId = deadlineRangeId,
+                        closedRangeId = closedRangeId,
+                        clockRangeId = clockRangeId,
+                        tags = if (node.head.hasTags()) Note.dbSerializeTags(node.head.tags) else null,
+                        createdAt = parsedNote.createdAt,
+                        content = content,
+                        contentLineCount = contentLineCount,
+                        position = position
+                )
+
+                writer.addNote(note)
+
+                writer.addProperties(noteId, node.head.properties)
+
+                parsedNote.events.forEach { range ->
+                    getOrgRangeId(range)?.let { orgRangeId ->
+                        writer.addEvent(noteId, orgRangeId)
+                    }
+                }
+
+                if (node.head.hasTags()) {
+                    writer.addTags(noteId, node.head.tags)
+                }
+
+                for (depth in 0 until ancestry.depth) {
+                    writer.addAncestor(bookId, noteId, writer.firstNoteId + ancestry.ancestorRank(depth))
+                }
+
+            }, { file ->
+                val book = Book(
+                        bookId,
+                        bookName,
+                        mtime = vrook?.mtime, // Set book's mtime to remote book's
+                        preface = file.preface, // TODO: Move to and rename OrgFileSettings
+                        isIndented = file.settings.isIndented,
+                        title = file.settings.title,
+                        isDummy = false,
+                        usedEncoding = encoding.used,
+                        detectedEncoding = encoding.detected,
+                        selectedEncoding = encoding.selected
+                )
+
+                db.book().update(book)
+            })
+
+            writer.flush()
+        }
+
+        db.book().incrementGeneration(bookId)
+
+        /* Ancestors' tags are only known once the whole book is written. */
+        db.noteTag().insertInheritedForBook(bookId)
+
+        db.note().updatePlanningTimesForBook(bookId)
 
         if (BuildConfig.LOG_DEBUG)
-            LogUtils.d(TAG, bookName + ": Parsing done in " +
+            LogUtils.d(TAG, bookName + ": Loading done in " +
                     (System.currentTimeMillis() - startedAt) + " ms")
 
         if (vrook != null) {
@@ -1848,22 +2238,26 @@ class DataRepository @Inject constructor(
 
         val str = range.toString()
 
-        val entity = db.orgRange().getByString(str)
-
-        if (entity != null) {
-            return entity.id
+        db.orgTimeIdsCache.getRangeId(str)?.let {
+            return it
         }
 
-        val startId = getOrgDateTimeId(range.startTime)
+        val id = db.orgRange().getByString(str)?.id ?: run {
+            val startId = getOrgDateTimeId(range.startTime)
 
-        val rangeEndTime = if (range.endTime != null) {
-            range.endTime
-        } else {
-            null
+            val rangeEndTime = if (range.endTime != null) {
+                range.endTime
+            } else {
+                null
+            }
+            val endId = if (rangeEndTime != null) getOrgDateTimeId(rangeEndTime) else null
+
+            db.orgRange().insert(OrgRange(0, str, startId, endId))
         }
-        val endId = if (rangeEndTime != null) getOrgDateTimeId(rangeEndTime) else null
 
-        return db.orgRange().insert(OrgRange(0, str, startId, endId))
+        db.orgTimeIdsCache.putRangeId(str, id, db.inTransaction())
+
+        return id
     }
 
     fun openBookForNote(noteId: Long, sparseTree: Boolean) {
@@ -1893,9 +2287,19 @@ class DataRepository @Inject constructor(
     }
 
     private fun getOrgDateTimeId(timestamp: OrgDateTime): Long {
-        return db.orgTimestamp().getByString(timestamp.toString()).let {
+        val str = timestamp.toString()
+
+        db.orgTimeIdsCache.getTimestampId(str)?.let {
+            return it
+        }
+
+        val id = db.orgTimestamp().getByString(str).let {
             it?.id ?: db.orgTimestamp().insert(OrgTimestampMapper.fromOrgDateTime(timestamp))
         }
+
+        db.orgTimeIdsCache.putTimestampId(str, id, db.inTransaction())
+
+        return id
     }
 
     private fun getCreatedAtFromProperty(node: OrgNodeInSet, use: Boolean, name: String): Long? {
@@ -2052,6 +2456,8 @@ class DataRepository @Inject constructor(
         // Since old url might be in use, do not update the existing record, but replace it
         val newId = db.repo().deleteAndInsert(repoWithProps.repo)
 
+        repoFactory.evict(repoWithProps.repo.id)
+
         AppPreferences.repoPropsMapDelete(context, repoWithProps.repo.id)
 
         AppPreferences.repoPropsMap(context, newId, repoWithProps.props)
@@ -2062,6 +2468,8 @@ class DataRepository @Inject constructor(
     fun deleteRepo(id: Long) {
         db.repo().delete(id)
 
+        repoFactory.evict(id)
+
         AppPreferences.repoPropsMapDelete(context, id)
     }
 
@@ -2073,6 +2481,46 @@ class DataRepository @Inject constructor(
         return db.reminderTime().getAll()
     }
 
+    /**
+     * Computes fire times of reminders for notes changed since they were last scheduled.
+     */
+    fun refreshReminderSchedule(defaultTimeOfDay: Int) {
+        db.runInTransaction {
+            val dao = db.reminderSchedule()
+
+            dao.deleteStale(defaultTimeOfDay)
+
+            val times = dao.getUnscheduledTimes()
+
+            if (times.isNotEmpty()) {
+                dao.insert(times.map { time ->
+                    val fireTime = NoteReminders.getFireTime(
+                            time.timeType, OrgDateTime.parse(time.orgTimestampString), defaultTimeOfDay)
+
+                    ReminderSchedule(
+                            time.noteId,
+                            time.timeType,
+                            time.orgRangeId,
+                            time.generation,
+                            defaultTimeOfDay,
+                            fireTime?.millis)
+                })
+            }
+
+            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Scheduled ${times.size} reminder times")
+        }
+    }
+
+    fun getScheduledReminders(
+            from: Long,
+            before: Long?,
+            timeTypes: Collection<Int>,
+            doneKeywords: Collection<String>,
+            limit: Int = -1): List<ReminderScheduleDao.ScheduledTime> {
+
+        return db.reminderSchedule().get(from, before, timeTypes, doneKeywords, limit)
+    }
+
     /**
      * Return all known tags
      */
@@ -2090,6 +2538,13 @@ class DataRepository @Inject constructor(
                 .distinct()
     }
 
+    /**
+     * Recreates the full-text index used for searching notes' text.
+     */
+    fun rebuildSearchIndex() {
+        OrgzlyDatabase.rebuildNotesFts(db.openHelper.writableDatabase)
+    }
+
     /**
      * Using current states configuration, update states and titles for all notes.
      * Keywords that were part of the title can become states and vice versa.
@@ -2280,6 +2735,8 @@ class DataRepository @Inject constructor(
         db.runInTransaction {
             db.clearAllTables()
 
+            db.orgTimeIdsCache.clear()
+
             OrgzlyDatabase.insertDefaultSearches(db.openHelper.writableDatabase)
         }
 
@@ -2299,10 +2756,23 @@ class DataRepository @Inject constructor(
     fun updateTimestamps() {
         if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG)
 
-        db.orgTimestamp().getAll().forEach {
-            val timestamp = OrgDateTime.doParse(it.string).calendar.timeInMillis
-            db.orgTimestamp().update(it.copy(timestamp = timestamp))
+        db.runInTransaction {
+            db.orgTimestamp().getAll().forEach {
+                val timestamp = OrgDateTime.doParse(it.string).calendar.timeInMillis
+                db.orgTimestamp().update(it.copy(timestamp = timestamp))
+            }
+
+            db.note().updatePlanningTimesForAll()
+
+            /* Days of occurrences depend on the time zone. */
+            db.agendaOccurrence().deleteAll()
+            db.agendaOccurrence().deleteAllNotes()
+
+            db.reminderSchedule().deleteAll()
         }
+
+        /* Parsed ranges also have their times in the previous time zone. */
+        OrgRangeCache.clear()
     }
 
     fun getSyncRepos(): List<SyncRepo> {
@@ -2344,5 +2814,16 @@ class DataRepository @Inject constructor(
         private val TAG = DataRepository::class.java.name
 
         const val GETTING_STARTED_NOTEBOOK_RESOURCE_ID = R.raw.orgzly_getting_started
+
+        private val ID_COLUMNS = arrayOf("id")
+
+        private val AGENDA_COLUMNS = arrayOf(
+                "n.*",
+                "o.time_type AS agenda_time_type",
+                "o.day AS agenda_day",
+                "o.is_overdue AS agenda_is_overdue")
+
+        /** Days for which occurrences are expanded, unless agenda asks for more. */
+        const val AGENDA_HORIZON_DAYS = 31
     }
 }
@@ -0,0 +1,25 @@
+package com.orgzly.android.data
+
+import com.orgzly.android.repos.VersionedRook
+import com.orgzly.android.util.Encoding
+import com.orgzly.org.OrgFile
+import com.orgzly.org.datetime.OrgRange
+import com.orgzly.org.parser.OrgNodeInSet
+
+/**
+ * Book parsed from a file, but not yet written to the database.
+ */
+class ParsedBook(
+        val name: String,
+        val vrook: VersionedRook?,
+        val encoding: Encoding,
+        val file: OrgFile,
+        val notes: List<ParsedNote>)
+
+/**
+ * Parsed note, with everything which doesn't require the database already extracted.
+ */
+class ParsedNote(
+        val node: OrgNodeInSet,
+        val createdAt: Long?,
+        val events: List<OrgRange>)
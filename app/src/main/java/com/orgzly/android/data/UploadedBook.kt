@@ -0,0 +1,13 @@
+package com.orgzly.android.data
+
+import com.orgzly.android.repos.VersionedRook
+
+/**
+ * Book uploaded to a repository, but not yet linked to it in the database.
+ *
+ * [generation] is the book's generation when it was exported.
+ */
+class UploadedBook(
+        val bookId: Long,
+        val generation: Long,
+        val vrook: VersionedRook)
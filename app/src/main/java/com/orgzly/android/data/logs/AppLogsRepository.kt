@@ -6,4 +6,6 @@ interface AppLogsRepository {
     fun log(type: String, str: String)
 
     fun getFlow(type: String): Flow<List<LogEntry>>
+
+    fun getQueryProfiles(): List<QueryProfile>
 }
\ No newline at end of file
@@ -13,6 +13,8 @@ import javax.inject.Singleton
 class DatabaseAppLogsRepository @Inject constructor(db: OrgzlyDatabase) : AppLogsRepository {
     private val dbAppLog = db.appLog()
 
+    private val queryProfiler = db.queryProfiler
+
     override fun log(type: String, str: String) {
         val entry = AppLog(0, System.currentTimeMillis(), type, str)
         dbAppLog.insert(entry)
@@ -25,4 +27,8 @@ class DatabaseAppLogsRepository @Inject constructor(db: OrgzlyDatabase) : AppLog
             }
         }.flowOn(Dispatchers.IO)
     }
+
+    override fun getQueryProfiles(): List<QueryProfile> {
+        return queryProfiler.getProfiles()
+    }
 }
\ No newline at end of file
@@ -0,0 +1,12 @@
+package com.orgzly.android.data.logs
+
+/**
+ * Statistics of a database statement, collected while profiling. Times are in nanoseconds.
+ */
+data class QueryProfile(
+        val sql: String,
+        val executions: Int,
+        val totalTime: Long,
+        val maxTime: Long,
+        val rows: Int,
+        val plan: String)
@@ -0,0 +1,113 @@
+package com.orgzly.android.db
+
+import androidx.sqlite.db.SupportSQLiteDatabase
+import androidx.sqlite.db.SupportSQLiteStatement
+import java.io.Closeable
+
+/**
+ * Buffers rows for a single table and writes them using multi-row INSERT statements.
+ *
+ * Statements are compiled once and reused for every flush. Full chunks are written
+ * using a statement with as many rows as bind variables allow, the rest one by one.
+ */
+class BatchInsert @JvmOverloads constructor(
+        private val db: SupportSQLiteDatabase,
+        private val table: String,
+        private val columns: Array<String>,
+        private val conflict: String = "") : Closeable {
+
+    val rowsPerStatement = OrgzlyDatabase.SQLITE_MAX_VARIABLE_NUMBER / columns.size
+
+    private val values = ArrayList<Any?>()
+
+    private var multiRowStatement: SupportSQLiteStatement? = null
+
+    private var singleRowStatement: SupportSQLiteStatement? = null
+
+    val size: Int
+        get() = values.size / columns.size
+
+    fun add(vararg row: Any?) {
+        require(row.size == columns.size) {
+            "Expected ${columns.size} values for $table, got ${row.size}"
+        }
+
+        values.addAll(row)
+    }
+
+    fun flush() {
+        val rows = size
+
+        var row = 0
+
+        while (rows - row >= rowsPerStatement) {
+            val statement = multiRowStatement
+                    ?: compile(rowsPerStatement).also { multiRowStatement = it }
+
+            execute(statement, row, rowsPerStatement)
+
+            row += rowsPerStatement
+        }
+
+        while (row < rows) {
+            val statement = singleRowStatement
+                    ?: compile(1).also { singleRowStatement = it }
+
+            execute(statement, row, 1)
+
+            row++
+        }
+
+        values.clear()
+    }
+
+    override fun close() {
+        multiRowStatement?.close()
+        singleRowStatement?.close()
+    }
+
+    private fun execute(statement: SupportSQLiteStatement, fromRow: Int, rows: Int) {
+        statement.clearBindings()
+
+        val from = fromRow * columns.size
+
+        for (i in 0 until rows * columns.size) {
+            bind(statement, i + 1, values[from + i])
+        }
+
+        statement.executeInsert()
+    }
+
+    private fun compile(rows: Int): SupportSQLiteStatement {
+        val placeholders = columns.joinToString(",", "(", ")") { "?" }
+
+        val sql = StringBuilder()
+                .append("INSERT ").append(conflict).append(" INTO ").append(table)
+                .append(columns.joinToString(",", " (", ")"))
+                .append(" VALUES ")
+                .apply {
+                    for (i in 0 until rows) {
+                        if (i > 0) append(",")
+                        append(placeholders)
+                    }
+                }
+                .toString()
+
+        return db.compileStatement(sql)
+    }
+
+    companion object {
+        @JvmStatic
+        fun bind(statement: SupportSQLiteStatement, index: Int, value: Any?) {
+            when (value) {
+                null -> statement.bindNull(index)
+                is String -> statement.bindString(index, value)
+                is Long -> statement.bindLong(index, value)
+                is Int -> statement.bindLong(index, value.toLong())
+                is Boolean -> statement.bindLong(index, if (value) 1 else 0)
+                is Double -> statement.bindDouble(index, value)
+                else -> throw IllegalArgumentException("Unsupported value type ${value.javaClass}")
+            }
+        }
+    }
+}
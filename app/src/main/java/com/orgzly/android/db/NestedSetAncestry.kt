@@ -0,0 +1,121 @@
+package com.orgzly.android.db
+
+/**
+ * Resolves parents and ancestors of nested set nodes received in post-order
+ * (descendants before their ancestors), as emitted by the Org parser.
+ *
+ * Every node is identified by its rank -- its position in pre-order. Rank and depth
+ * are calculated from node's lft and rgt and the number of nodes received before it.
+ * Ancestors are resolved before they are received, using a stack of open ancestors
+ * and the last received node for each depth.
+ *
+ * Depth is used instead of note's level, as levels can be skipped (* A, *** B).
+ */
+class NestedSetAncestry {
+    /* Last received node for each depth: its rgt and its parent's lft and rank. */
+    private var lastRgt = LongArray(INITIAL_DEPTH)
+    private var lastParentLft = LongArray(INITIAL_DEPTH)
+    private var lastParentRank = LongArray(INITIAL_DEPTH)
+
+    /* Ancestors of the last received node, for each depth. */
+    private var pathLft = LongArray(INITIAL_DEPTH) { -1 }
+    private var pathRank = LongArray(INITIAL_DEPTH)
+
+    /* Number of nodes received so far. */
+    private var received = 0L
+
+    /** Pre-order rank of the last received node. */
+    var rank = 0L
+        private set
+
+    /** Depth of the last received node, also the number of its ancestors. */
+    var depth = 0
+        private set
+
+    /**
+     * Receives the next node and resolves its ancestors.
+     *
+     *   lft = rank + (nodes closed before it was opened) + 1
+     *   rgt = rank + descendants + (nodes closed before and including it) + 1
+     */
+    fun add(lft: Long, rgt: Long) {
+        val descendants = (rgt - lft - 1) / 2
+
+        rank = rgt - descendants - received - 2
+        depth = (2 * rank + 1 - lft).toInt()
+
+        received++
+
+        ensureDepth(depth + 1)
+
+        if (depth == 0) {
+            return
+        }
+
+        /* Parent of this node. */
+        var ancestorLft: Long
+        var ancestorRank: Long
+
+        if (lastRgt[depth] == lft - 1) { // Previous sibling was the last node received at this depth
+            ancestorLft = lastParentLft[depth]
+            ancestorRank = lastParentRank[depth]
+        } else { // First child
+            ancestorLft = lft - 1
+            ancestorRank = rank - 1
+        }
+
+        lastRgt[depth] = rgt
+        lastParentLft[depth] = ancestorLft
+        lastParentRank[depth] = ancestorRank
+
+        /* Walk up until reaching an ancestor which is already in the path. */
+        var ancestorDepth = depth - 1
+
+        while (pathLft[ancestorDepth] != ancestorLft) {
+            pathLft[ancestorDepth] = ancestorLft
+            pathRank[ancestorDepth] = ancestorRank
+
+            if (ancestorDepth == 0) {
+                break
+            }
+
+            if (lastRgt[ancestorDepth] == ancestorLft - 1) {
+                ancestorRank = lastParentRank[ancestorDepth]
+                ancestorLft = lastParentLft[ancestorDepth]
+            } else {
+                ancestorRank -= 1
+                ancestorLft -= 1
+            }
+
+            ancestorDepth--
+        }
+    }
+
+    /** Rank of the last received node's parent, -1 for the root. */
+    val parentRank: Long
+        get() = if (depth > 0) pathRank[depth - 1] else -1
+
+    /** Rank of the last received node's ancestor at the specified depth. */
+    fun ancestorRank(ancestorDepth: Int): Long {
+        require(ancestorDepth in 0 until depth)
+        return pathRank[ancestorDepth]
+    }
+
+    private fun ensureDepth(size: Int) {
+        if (size > lastRgt.size) {
+            val newSize = maxOf(size, lastRgt.size * 2)
+
+            lastRgt = lastRgt.copyOf(newSize)
+            lastParentLft = lastParentLft.copyOf(newSize)
+            lastParentRank = lastParentRank.copyOf(newSize)
+            pathRank = pathRank.copyOf(newSize)
+
+            val oldSize = pathLft.size
+            pathLft = pathLft.copyOf(newSize).apply { fill(-1, oldSize) }
+        }
+    }
+
+    companion object {
+        private const val INITIAL_DEPTH = 16
+    }
+}
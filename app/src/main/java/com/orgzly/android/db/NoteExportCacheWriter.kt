@@ -0,0 +1,38 @@
+package com.orgzly.android.db
+
+import java.io.Closeable
+
+/**
+ * Stores notes written to a book file, in batches, for reuse by the next export.
+ */
+class NoteExportCacheWriter @JvmOverloads constructor(
+        db: OrgzlyDatabase,
+        private val settings: String,
+        private val batchSize: Int = NotesBatchWriter.DEFAULT_BATCH_SIZE) : Closeable {
+
+    private val entries = BatchInsert(
+            db.openHelper.writableDatabase,
+            "note_export_cache",
+            arrayOf("note_id", "generation", "settings", "text"),
+            "OR REPLACE")
+
+    /**
+     * Generation must be the one the note had when it was read,
+     * so that the entry is ignored if the note has been modified since.
+     */
+    fun put(noteId: Long, generation: Long, text: String) {
+        entries.add(noteId, generation, settings, text)
+
+        if (entries.size >= batchSize) {
+            entries.flush()
+        }
+    }
+
+    override fun close() {
+        try {
+            entries.flush()
+        } finally {
+            entries.close()
+        }
+    }
+}
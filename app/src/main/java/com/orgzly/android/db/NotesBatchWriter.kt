@@ -0,0 +1,166 @@
+package com.orgzly.android.db
+
+import com.orgzly.android.db.entity.Note
+import com.orgzly.org.OrgProperties
+import java.io.Closeable
+
+/**
+ * Writes notes of a book being imported, together with their properties,
+ * events, own tags and ancestors, in fixed-size batches.
+ *
+ * Note IDs are assigned by the caller, starting from [firstNoteId], before notes
+ * are written, so that dependent rows can be buffered and written in the same batch.
+ * Must be used inside a transaction, as foreign key checks are deferred until commit.
+ */
+class NotesBatchWriter @JvmOverloads constructor(
+        db: OrgzlyDatabase,
+        batchSize: Int = DEFAULT_BATCH_SIZE) : Closeable {
+
+    private val sqlDb = db.openHelper.writableDatabase
+
+    private val notes = BatchInsert(sqlDb, "notes", NOTE_COLUMNS)
+
+    private val properties = BatchInsert(sqlDb, "note_properties",
+            arrayOf("note_id", "position", "name", "value"))
+
+    private val events = BatchInsert(sqlDb, "note_events",
+            arrayOf("note_id", "org_range_id"), "OR REPLACE")
+
+    /* Tags repeated in a note are ignored. */
+    private val tags = BatchInsert(sqlDb, "note_tags",
+            arrayOf("note_id", "tag", "inherited"), "OR IGNORE")
+
+    private val ancestors = BatchInsert(sqlDb, "note_ancestors",
+            arrayOf("book_id", "note_id", "ancestor_note_id"))
+
+    /* Rounded up so that notes are always written using full multi-row statements. */
+    private val batchSize = (batchSize + notes.rowsPerStatement - 1) / notes.rowsPerStatement * notes.rowsPerStatement
+
+    /** First ID which is not and never was used for a note. */
+    val firstNoteId = firstAvailableNoteId()
+
+    init {
+        /*
+         * Ancestors are written before ancestor notes themselves,
+         * as notes are received from the parser in post-order.
+         */
+        sqlDb.execSQL("PRAGMA defer_foreign_keys = ON")
+    }
+
+    /**
+     * Buffers the note. Its ID must already be assigned.
+     */
+    fun addNote(note: Note) {
+        val id = note.id
+
+        val position = note.position
+
+        notes.add(
+                id,
+                note.isCut,
+                note.createdAt,
+                note.title,
+                note.tags,
+                note.state,
+                note.priority,
+                note.content,
+                note.contentLineCount,
+                note.scheduledRangeId,
+                note.deadlineRangeId,
+                note.closedRangeId,
+                note.clockRangeId,
+                position.bookId,
+                position.lft,
+                position.rgt,
+                position.level,
+                position.parentId,
+                position.foldedUnderId,
+                position.isFolded,
+                position.descendantsCount)
+
+        if (notes.size >= batchSize) {
+            flush()
+        }
+    }
+
+    fun addProperties(noteId: Long, orgProperties: OrgProperties) {
+        var position = 1
+
+        orgProperties.all.forEach { property ->
+            properties.add(noteId, position++, property.name, property.value)
+        }
+    }
+
+    fun addEvent(noteId: Long, orgRangeId: Long) {
+        events.add(noteId, orgRangeId)
+    }
+
+    fun addTags(noteId: Long, orgTags: List<String>) {
+        orgTags.forEach { tag ->
+            tags.add(noteId, tag, false)
+        }
+    }
+
+    fun addAncestor(bookId: Long, noteId: Long, ancestorNoteId: Long) {
+        ancestors.add(bookId, noteId, ancestorNoteId)
+    }
+
+    /**
+     * Writes all buffered rows. Notes are written first, as other tables reference them.
+     */
+    fun flush() {
+        notes.flush()
+        properties.flush()
+        events.flush()
+        tags.flush()
+        ancestors.flush()
+    }
+
+    override fun close() {
+        notes.close()
+        properties.close()
+        events.close()
+        tags.close()
+        ancestors.close()
+    }
+
+    /*
+     * Respect AUTOINCREMENT and never reuse IDs of deleted notes.
+     */
+    private fun firstAvailableNoteId(): Long {
+        sqlDb.query("""
+            SELECT MAX(
+                COALESCE((SELECT seq FROM sqlite_sequence WHERE name = 'notes'), 0),
+                COALESCE((SELECT MAX(id) FROM notes), 0))
+            """).use { cursor ->
+            return if (cursor.moveToFirst()) cursor.getLong(0) + 1 else 1
+        }
+    }
+
+    companion object {
+        const val DEFAULT_BATCH_SIZE = 500
+
+        private val NOTE_COLUMNS = arrayOf(
+                "id",
+                "is_cut",
+                "created_at",
+                "title",
+                "tags",
+                "state",
+                "priority",
+                "content",
+                "content_line_count",
+                "scheduled_range_id",
+                "deadline_range_id",
+                "closed_range_id",
+                "clock_range_id",
+                "book_id",
+                "lft",
+                "rgt",
+                "level",
+                "parent_id",
+                "folded_under_id",
+                "is_folded",
+                "descendants_count")
+    }
+}
@@ -0,0 +1,26 @@
+package com.orgzly.android.db
+
+import android.util.LruCache
+import com.orgzly.org.datetime.OrgRange
+
+/**
+ * Parsed ranges, keyed by their strings, so that notes' times are not parsed
+ * every time a note is displayed. There is only one `org_ranges` row for each string.
+ *
+ * Returned instances are shared and must not be modified (shifted by repeaters, for example).
+ */
+object OrgRangeCache {
+    private const val MAX_SIZE = 1024
+
+    private val ranges = LruCache<String, OrgRange>(MAX_SIZE)
+
+    fun parse(string: String): OrgRange? {
+        return ranges.get(string) ?: OrgRange.parseOrNull(string)?.also {
+            ranges.put(string, it)
+        }
+    }
+
+    fun clear() {
+        ranges.evictAll()
+    }
+}
@@ -0,0 +1,133 @@
+package com.orgzly.android.db
+
+import android.util.LruCache
+
+/**
+ * Bounded cache of `org_ranges` and `org_timestamps` IDs, keyed by their strings.
+ *
+ * Entries learned inside a transaction are only visible to the thread running it,
+ * until the outermost transaction is committed. They are dropped if it is rolled back.
+ */
+class OrgTimeIdsCache(maxSize: Int = DEFAULT_MAX_SIZE) {
+    private val ranges = LruCache<String, Long>(maxSize)
+
+    private val timestamps = LruCache<String, Long>(maxSize)
+
+    private class Transaction {
+        var depth = 0
+        var failed = false
+        var successful = BooleanArray(4)
+        val ranges = HashMap<String, Long>()
+        val timestamps = HashMap<String, Long>()
+    }
+
+    private val transaction = object : ThreadLocal<Transaction>() {
+        override fun initialValue() = Transaction()
+    }
+
+    fun getRangeId(string: String): Long? {
+        return get(ranges, transaction.get()!!.ranges, string)
+    }
+
+    fun putRangeId(string: String, id: Long, inDbTransaction: Boolean) {
+        put(ranges, transaction.get()!!.ranges, string, id, inDbTransaction)
+    }
+
+    fun getTimestampId(string: String): Long? {
+        return get(timestamps, transaction.get()!!.timestamps, string)
+    }
+
+    fun putTimestampId(string: String, id: Long, inDbTransaction: Boolean) {
+        put(timestamps, transaction.get()!!.timestamps, string, id, inDbTransaction)
+    }
+
+    private fun get(committed: LruCache<String, Long>, pending: Map<String, Long>, string: String): Long? {
+        return pending[string] ?: committed.get(string)
+    }
+
+    private fun put(
+            committed: LruCache<String, Long>,
+            pending: MutableMap<String, Long>,
+            string: String,
+            id: Long,
+            inDbTransaction: Boolean) {
+
+        val depth = transaction.get()!!.depth
+
+        when {
+            depth > 0 -> pending[string] = id
+
+            // Transaction not started through the database, its outcome is unknown
+            inDbTransaction -> return
+
+            else -> committed.put(string, id)
+        }
+    }
+
+    fun onBeginTransaction() {
+        transaction.get()!!.apply {
+            if (depth == successful.size) {
+                successful = successful.copyOf(depth * 2)
+            }
+            successful[depth++] = false
+        }
+    }
+
+    fun onTransactionSuccessful() {
+        transaction.get()!!.apply {
+            if (depth > 0) {
+                successful[depth - 1] = true
+            }
+        }
+    }
+
+    /**
+     * Returns true if this is the end of the outermost transaction
+     * and it is going to be committed.
+     */
+    fun onEndTransaction(): Boolean {
+        transaction.get()!!.apply {
+            if (depth == 0) {
+                return false
+            }
+
+            // Any nested transaction not marked successful rolls back the whole transaction
+            if (!successful[--depth]) {
+                failed = true
+            }
+
+            return depth == 0 && !failed
+        }
+    }
+
+    /**
+     * Called after the outermost transaction has ended.
+     */
+    fun onTransactionFinished(committed: Boolean) {
+        transaction.get()!!.apply {
+            if (committed) {
+                this.ranges.forEach { (string, id) -> this@OrgTimeIdsCache.ranges.put(string, id) }
+                this.timestamps.forEach { (string, id) -> this@OrgTimeIdsCache.timestamps.put(string, id) }
+            }
+
+            this.ranges.clear()
+            this.timestamps.clear()
+
+            failed = false
+        }
+    }
+
+    fun clear() {
+        ranges.evictAll()
+        timestamps.evictAll()
+
+        transaction.get()!!.apply {
+            ranges.clear()
+            timestamps.clear()
+        }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_SIZE = 2048
+    }
+}
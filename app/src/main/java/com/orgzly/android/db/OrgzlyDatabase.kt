@@ -10,6 +10,7 @@ import androidx.room.TypeConverters
 import androidx.room.migration.Migration
 import androidx.sqlite.db.SupportSQLiteDatabase
 import androidx.sqlite.db.SupportSQLiteQueryBuilder
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory
 import com.orgzly.BuildConfig
 import com.orgzly.android.db.dao.*
 import com.orgzly.android.db.entity.*
@@ -21,6 +22,8 @@ import java.util.*
 
 @Database(
         entities = [
+            AgendaNote::class,
+            AgendaOccurrence::class,
             Book::class,
             BookLink::class,
             BookSync::class,
@@ -29,8 +32,11 @@ import java.util.*
             NoteAncestor::class,
             NoteProperty::class,
             NoteEvent::class,
+            NoteExportCache::class,
+            NoteTag::class,
             OrgRange::class,
             OrgTimestamp::class,
+            ReminderSchedule::class,
             Repo::class,
             Rook::class,
             RookUrl::class,
@@ -39,11 +45,12 @@ import java.util.*
             AppLog::class
         ],
 
-        version = 156
+        version = 163
 )
 @TypeConverters(com.orgzly.android.db.TypeConverters::class)
 abstract class OrgzlyDatabase : RoomDatabase() {
 
+    abstract fun agendaOccurrence(): AgendaOccurrenceDao
     abstract fun book(): BookDao
     abstract fun bookLink(): BookLinkDao
     abstract fun bookView(): BookViewDao
@@ -53,8 +60,10 @@ abstract class OrgzlyDatabase : RoomDatabase() {
     abstract fun noteView(): NoteViewDao
     abstract fun noteProperty(): NotePropertyDao
     abstract fun noteEvent(): NoteEventDao
+    abstract fun noteTag(): NoteTagDao
     abstract fun orgRange(): OrgRangeDao
     abstract fun reminderTime(): ReminderTimeDao
+    abstract fun reminderSchedule(): ReminderScheduleDao
     abstract fun orgTimestamp(): OrgTimestampDao
     abstract fun repo(): RepoDao
     abstract fun rook(): RookDao
@@ -64,6 +73,50 @@ abstract class OrgzlyDatabase : RoomDatabase() {
     abstract fun dbRepoBook(): DbRepoBookDao
     abstract fun appLog(): AppLogDao
 
+    /**
+     * IDs of `org_ranges` and `org_timestamps` by their strings.
+     * Created empty with each database instance, after migrations are done.
+     */
+    val orgTimeIdsCache = OrgTimeIdsCache()
+
+    lateinit var queryProfiler: QueryProfiler
+        private set
+
+    /*
+     * Transactions are tracked so that cached IDs of rows
+     * inserted in a transaction which is rolled back are discarded.
+     */
+
+    @Deprecated("Use runInTransaction")
+    @Suppress("DEPRECATION")
+    override fun beginTransaction() {
+        super.beginTransaction()
+        orgTimeIdsCache.onBeginTransaction()
+    }
+
+    @Deprecated("Use runInTransaction")
+    @Suppress("DEPRECATION")
+    override fun setTransactionSuccessful() {
+        super.setTransactionSuccessful()
+        orgTimeIdsCache.onTransactionSuccessful()
+    }
+
+    @Deprecated("Use runInTransaction")
+    @Suppress("DEPRECATION")
+    override fun endTransaction() {
+        val outermost = orgTimeIdsCache.onEndTransaction()
+
+        var committed = false
+        try {
+            super.endTransaction()
+            committed = outermost
+        } finally {
+            if (!inTransaction()) {
+                orgTimeIdsCache.onTransactionFinished(committed)
+            }
+        }
+    }
+
     companion object {
         private val TAG = OrgzlyDatabase::class.java.name
 
@@ -76,16 +129,31 @@ abstract class OrgzlyDatabase : RoomDatabase() {
 
         @JvmStatic
         fun forMemory(context: Context): OrgzlyDatabase {
+            val profiler = QueryProfiler(context.applicationContext)
+
             return Room.inMemoryDatabaseBuilder(context.applicationContext, OrgzlyDatabase::class.java)
                     .allowMainThreadQueries()
+                    .openHelperFactory(QueryProfiler.OpenHelperFactory(FrameworkSQLiteOpenHelperFactory(), profiler))
+                    .addCallback(object : Callback() {
+                        override fun onCreate(db: SupportSQLiteDatabase) {
+                            createNoteGenerationTriggers(db)
+                            createBookGenerationTriggers(db)
+                            createNotesFts(db)
+                            createNotePlanningTimesTrigger(db)
+                        }
+                    })
                     .build()
+                    .also { it.queryProfiler = profiler }
         }
 
         @JvmStatic
         fun forFile(context: Context, fileName: String): OrgzlyDatabase {
+            val profiler = QueryProfiler(context.applicationContext)
+
             return Room.databaseBuilder(
                     context.applicationContext, OrgzlyDatabase::class.java, fileName)
                     .allowMainThreadQueries() // TODO: Remove
+                    .openHelperFactory(QueryProfiler.OpenHelperFactory(FrameworkSQLiteOpenHelperFactory(), profiler))
                     .addMigrations(
                             PreRoomMigration.MIGRATION_130_131,
                             PreRoomMigration.MIGRATION_131_132,
@@ -113,12 +181,24 @@ abstract class OrgzlyDatabase : RoomDatabase() {
                             MIGRATION_152_153,
                             MIGRATION_153_154,
                             MIGRATION_154_155,
-                            MIGRATION_155_156
+                            MIGRATION_155_156,
+                            MIGRATION_156_157,
+                            MIGRATION_157_158,
+                            MIGRATION_158_159,
+                            MIGRATION_159_160,
+                            MIGRATION_160_161,
+                            MIGRATION_161_162,
+                            MIGRATION_162_163
                     )
                     .addCallback(object : Callback() {
                         override fun onCreate(db: SupportSQLiteDatabase) {
                             if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Database created")
 
+                            createNoteGenerationTriggers(db)
+                            createBookGenerationTriggers(db)
+                            createNotesFts(db)
+                            createNotePlanningTimesTrigger(db)
+
                             insertDefaultSearches(db)
                         }
 
@@ -127,6 +207,7 @@ abstract class OrgzlyDatabase : RoomDatabase() {
                         }
                     })
                     .build()
+                    .also { it.queryProfiler = profiler }
         }
 
         fun insertDefaultSearches(db: SupportSQLiteDatabase) {
@@ -136,6 +217,150 @@ abstract class OrgzlyDatabase : RoomDatabase() {
             db.execSQL("INSERT INTO searches (`name`, `query`, `position`) VALUES (\"To Do\", \"i.todo\", 4)")
         }
 
+        /**
+         * Increment note's generation whenever anything written to the book file changes,
+         * so that notes exported before can be reused (see [NoteExportCache]).
+         *
+         * Triggers are used as notes are modified by many different queries.
+         * Generation never decreases, even if entity with an old generation is used for update.
+         */
+        fun createNoteGenerationTriggers(db: SupportSQLiteDatabase) {
+            db.execSQL("""
+                CREATE TRIGGER IF NOT EXISTS notes_generation_on_update
+                AFTER UPDATE OF title, tags, state, priority, content, scheduled_range_id, deadline_range_id, closed_range_id, clock_range_id, level ON notes
+                BEGIN
+                UPDATE notes SET generation = MAX(OLD.generation, NEW.generation) + 1 WHERE id = NEW.id;
+                END
+            """)
+
+            db.execSQL("""
+                CREATE TRIGGER IF NOT EXISTS notes_generation_on_property_insert
+                AFTER INSERT ON note_properties
+                BEGIN
+                UPDATE notes SET generation = generation + 1 WHERE id = NEW.note_id;
+                END
+            """)
+
+            db.execSQL("""
+                CREATE TRIGGER IF NOT EXISTS notes_generation_on_property_update
+                AFTER UPDATE ON note_properties
+                BEGIN
+                UPDATE notes SET generation = generation + 1 WHERE id IN (OLD.note_id, NEW.note_id);
+                END
+            """)
+
+            db.execSQL("""
+                CREATE TRIGGER IF NOT EXISTS notes_generation_on_property_delete
+                AFTER DELETE ON note_properties
+                BEGIN
+                UPDATE notes SET generation = generation + 1 WHERE id = OLD.note_id;
+                END
+            """)
+        }
+
+        /**
+         * Increment book's generation whenever the book or any of its notes changes,
+         * so that results of queries can be reused until one of their books changes.
+         *
+         * Inserted notes are not handled here, as whole books are imported in batches.
+         * Generation is incremented once by whoever inserts notes (see [BookDao.incrementGeneration]).
+         *
+         * Generation never decreases, even if entity with an old generation is used for update.
+         */
+        fun createBookGenerationTriggers(db: SupportSQLiteDatabase) {
+            db.execSQL("""
+                CREATE TRIGGER IF NOT EXISTS books_generation_on_update
+                AFTER UPDATE OF name, title, is_dummy, is_deleted, preface ON books
+                BEGIN
+                UPDATE books SET generation = MAX(OLD.generation, NEW.generation) + 1 WHERE id = NEW.id;
+                END
+            """)
+
+            /*
+             * Note's generation covers changes of its content and properties.
+             * Folding and other bookkeeping updates do not change the book.
+             */
+            db.execSQL("""
+                CREATE TRIGGER IF NOT EXISTS books_generation_on_note_update
+                AFTER UPDATE OF generation, book_id, lft, rgt, parent_id, is_cut ON notes
+                BEGIN
+                UPDATE books SET generation = generation + 1 WHERE id IN (OLD.book_id, NEW.book_id);
+                END
+            """)
+
+            db.execSQL("""
+                CREATE TRIGGER IF NOT EXISTS books_generation_on_note_delete
+                AFTER DELETE ON notes
+                BEGIN
+                UPDATE books SET generation = generation + 1 WHERE id = OLD.book_id;
+                END
+            """)
+        }
+
+        /**
+         * Full-text index of notes' title, content and tags, used for searching text.
+         *
+         * Content is not duplicated, it is read from notes table (external content FTS4 table).
+         * Triggers keep the index updated, as recommended for such tables.
+         * Room's own FTS entity is not used as its triggers fire on every update of notes,
+         * including frequent updates of their position.
+         */
+        fun createNotesFts(db: SupportSQLiteDatabase) {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS notes_fts USING fts4(content=\"notes\", title, content, tags, tokenize=unicode61)")
+
+            db.execSQL("""
+                CREATE TRIGGER IF NOT EXISTS notes_fts_before_update
+                BEFORE UPDATE OF title, content, tags ON notes
+                BEGIN
+                DELETE FROM notes_fts WHERE docid = OLD.id;
+                END
+            """)
+
+            db.execSQL("""
+                CREATE TRIGGER IF NOT EXISTS notes_fts_before_delete
+                BEFORE DELETE ON notes
+                BEGIN
+                DELETE FROM notes_fts WHERE docid = OLD.id;
+                END
+            """)
+
+            db.execSQL("""
+                CREATE TRIGGER IF NOT EXISTS notes_fts_after_update
+                AFTER UPDATE OF title, content, tags ON notes
+                BEGIN
+                INSERT INTO notes_fts(docid, title, content, tags) VALUES (NEW.id, NEW.title, NEW.content, NEW.tags);
+                END
+            """)
+
+            db.execSQL("""
+                CREATE TRIGGER IF NOT EXISTS notes_fts_after_insert
+                AFTER INSERT ON notes
+                BEGIN
+                INSERT INTO notes_fts(docid, title, content, tags) VALUES (NEW.id, NEW.title, NEW.content, NEW.tags);
+                END
+            """)
+        }
+
+        /**
+         * Keeps note's denormalized planning times in sync with its range IDs.
+         */
+        fun createNotePlanningTimesTrigger(db: SupportSQLiteDatabase) {
+            db.execSQL("""
+                CREATE TRIGGER IF NOT EXISTS notes_planning_times_on_update
+                AFTER UPDATE OF scheduled_range_id, deadline_range_id, closed_range_id ON notes
+                BEGIN
+                UPDATE notes SET ${NoteDao.SET_PLANNING_TIMES} WHERE id = NEW.id;
+                END
+            """)
+        }
+
+        /**
+         * Recreates the full-text index from notes.
+         */
+        fun rebuildNotesFts(db: SupportSQLiteDatabase) {
+            db.execSQL("INSERT INTO notes_fts(notes_fts) VALUES ('rebuild')")
+        }
+
         private val MIGRATION_149_150 = object : Migration(149, 150) {
             override fun migrate(db: SupportSQLiteDatabase) {
                 /*
@@ -564,5 +789,99 @@ abstract class OrgzlyDatabase : RoomDatabase() {
                 db.execSQL("CREATE INDEX IF NOT EXISTS `index_app_logs_name` ON `app_logs` (`name`)")
             }
         }
+
+        private val MIGRATION_156_157 = object : Migration(156, 157) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE notes ADD COLUMN generation INTEGER NOT NULL DEFAULT 0")
+
+                db.execSQL("CREATE TABLE IF NOT EXISTS `note_export_cache` (`note_id` INTEGER NOT NULL, `generation` INTEGER NOT NULL, `settings` TEXT NOT NULL, `text` TEXT NOT NULL, PRIMARY KEY(`note_id`), FOREIGN KEY(`note_id`) REFERENCES `notes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )")
+
+                createNoteGenerationTriggers(db)
+            }
+        }
+
+        private val MIGRATION_157_158 = object : Migration(157, 158) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                createNotesFts(db)
+                rebuildNotesFts(db)
+            }
+        }
+
+        private val MIGRATION_158_159 = object : Migration(158, 159) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS `note_tags` (`note_id` INTEGER NOT NULL, `tag` TEXT NOT NULL COLLATE NOCASE, `inherited` INTEGER NOT NULL, PRIMARY KEY(`note_id`, `tag`, `inherited`), FOREIGN KEY(`note_id`) REFERENCES `notes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_note_tags_tag_inherited` ON `note_tags` (`tag`, `inherited`)")
+
+                /* Split space-separated tags of each note. */
+                db.execSQL("""
+                    INSERT OR IGNORE INTO note_tags (note_id, tag, inherited)
+                    WITH RECURSIVE split(note_id, tag, rest) AS (
+                        SELECT id, '', tags || ' ' FROM notes WHERE tags IS NOT NULL AND tags != ''
+                        UNION ALL
+                        SELECT note_id, substr(rest, 1, instr(rest, ' ') - 1), substr(rest, instr(rest, ' ') + 1)
+                        FROM split WHERE rest != ''
+                    )
+                    SELECT note_id, tag, 0 FROM split WHERE tag != ''
+                """)
+
+                db.execSQL("""
+                    INSERT OR IGNORE INTO note_tags (note_id, tag, inherited)
+                    SELECT a.note_id, t.tag, 1
+                    FROM note_ancestors a
+                    JOIN note_tags t ON (t.note_id = a.ancestor_note_id AND t.inherited = 0)
+                """)
+            }
+        }
+
+        private val MIGRATION_159_160 = object : Migration(159, 160) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE notes ADD COLUMN scheduled_time_timestamp INTEGER")
+                db.execSQL("ALTER TABLE notes ADD COLUMN scheduled_time_start_of_day INTEGER")
+                db.execSQL("ALTER TABLE notes ADD COLUMN scheduled_time_hour INTEGER")
+                db.execSQL("ALTER TABLE notes ADD COLUMN scheduled_is_active INTEGER")
+                db.execSQL("ALTER TABLE notes ADD COLUMN deadline_time_timestamp INTEGER")
+                db.execSQL("ALTER TABLE notes ADD COLUMN deadline_time_start_of_day INTEGER")
+                db.execSQL("ALTER TABLE notes ADD COLUMN deadline_time_hour INTEGER")
+                db.execSQL("ALTER TABLE notes ADD COLUMN deadline_is_active INTEGER")
+                db.execSQL("ALTER TABLE notes ADD COLUMN closed_time_timestamp INTEGER")
+                db.execSQL("ALTER TABLE notes ADD COLUMN closed_time_start_of_day INTEGER")
+                db.execSQL("ALTER TABLE notes ADD COLUMN closed_time_hour INTEGER")
+                db.execSQL("ALTER TABLE notes ADD COLUMN closed_is_active INTEGER")
+
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_notes_scheduled_time_timestamp` ON `notes` (`scheduled_time_timestamp`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_notes_deadline_time_timestamp` ON `notes` (`deadline_time_timestamp`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_notes_closed_time_timestamp` ON `notes` (`closed_time_timestamp`)")
+
+                db.execSQL("UPDATE notes SET ${NoteDao.SET_PLANNING_TIMES} WHERE ${NoteDao.WHERE_HAS_PLANNING_TIMES}")
+
+                createNotePlanningTimesTrigger(db)
+            }
+        }
+
+        /* Occurrences are expanded when agenda is first displayed. */
+        private val MIGRATION_160_161 = object : Migration(160, 161) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS `agenda_notes` (`note_id` INTEGER NOT NULL, `generation` INTEGER NOT NULL, `horizon_start` INTEGER NOT NULL, `horizon_end` INTEGER NOT NULL, PRIMARY KEY(`note_id`), FOREIGN KEY(`note_id`) REFERENCES `notes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )")
+
+                db.execSQL("CREATE TABLE IF NOT EXISTS `agenda_occurrences` (`note_id` INTEGER NOT NULL, `time_type` INTEGER NOT NULL, `org_range_id` INTEGER NOT NULL, `day` INTEGER NOT NULL, `is_overdue` INTEGER NOT NULL, PRIMARY KEY(`note_id`, `time_type`, `org_range_id`, `day`, `is_overdue`), FOREIGN KEY(`note_id`) REFERENCES `notes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_agenda_occurrences_day` ON `agenda_occurrences` (`day`)")
+            }
+        }
+
+        /* Times are computed when reminders are next run. */
+        private val MIGRATION_161_162 = object : Migration(161, 162) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS `reminder_schedule` (`note_id` INTEGER NOT NULL, `time_type` INTEGER NOT NULL, `org_range_id` INTEGER NOT NULL, `generation` INTEGER NOT NULL, `default_time_of_day` INTEGER NOT NULL, `fire_time` INTEGER, PRIMARY KEY(`note_id`, `time_type`, `org_range_id`), FOREIGN KEY(`note_id`) REFERENCES `notes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_reminder_schedule_fire_time` ON `reminder_schedule` (`fire_time`)")
+            }
+        }
+
+        private val MIGRATION_162_163 = object : Migration(162, 163) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE books ADD COLUMN generation INTEGER NOT NULL DEFAULT 0")
+
+                createBookGenerationTriggers(db)
+            }
+        }
     }
 }
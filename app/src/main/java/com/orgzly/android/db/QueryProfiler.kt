@@ -0,0 +1,288 @@
+package com.orgzly.android.db
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.database.Cursor
+import android.database.CursorWrapper
+import android.os.CancellationSignal
+import androidx.preference.PreferenceManager
+import androidx.sqlite.db.SupportSQLiteDatabase
+import androidx.sqlite.db.SupportSQLiteOpenHelper
+import androidx.sqlite.db.SupportSQLiteProgram
+import androidx.sqlite.db.SupportSQLiteQuery
+import androidx.sqlite.db.SupportSQLiteStatement
+import com.orgzly.R
+import com.orgzly.android.data.logs.QueryProfile
+import com.orgzly.android.prefs.AppPreferences
+
+/**
+ * Opt-in profiling of database statements, for finding out why some queries are slow.
+ *
+ * Every distinct statement executed through Room (DAO methods and raw user queries)
+ * is timed, its rows are counted and its query plan is captured the first time it is seen.
+ * Time of a query includes reading all its rows.
+ */
+class QueryProfiler(context: Context) {
+    /** Follows the preference. */
+    @Volatile
+    var isEnabled = AppPreferences.profileQueries(context)
+
+    private val preferenceKey = context.getString(R.string.pref_key_profile_queries)
+
+    /* Referenced, as preferences only keep weak references to listeners. */
+    private val preferenceListener = SharedPreferences.OnSharedPreferenceChangeListener { _, key ->
+        if (key == preferenceKey) {
+            isEnabled = AppPreferences.profileQueries(context)
+
+            if (isEnabled) {
+                clear()
+            }
+        }
+    }
+
+    private class Stats(val sql: String, val plan: String) {
+        var executions = 0
+        var totalTime = 0L
+        var maxTime = 0L
+        var rows = 0
+    }
+
+    private val stats = HashMap<String, Stats>()
+
+    init {
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .registerOnSharedPreferenceChangeListener(preferenceListener)
+    }
+
+    /**
+     * Profiles of all statements executed since profiling was enabled, slowest first.
+     */
+    fun getProfiles(): List<QueryProfile> {
+        return synchronized(stats) {
+            stats.values.map {
+                QueryProfile(it.sql, it.executions, it.totalTime, it.maxTime, it.rows, it.plan)
+            }
+        }.sortedByDescending { it.maxTime }
+    }
+
+    fun clear() {
+        synchronized(stats) {
+            stats.clear()
+        }
+    }
+
+    private fun planFor(db: SupportSQLiteDatabase, sql: String, explain: () -> ExplainQuery): String {
+        synchronized(stats) {
+            stats[sql]?.let { return it.plan }
+        }
+
+        return try {
+            db.query(explain()).use { cursor ->
+                val detail = cursor.getColumnIndexOrThrow("detail")
+
+                generateSequence { if (cursor.moveToNext()) cursor.getString(detail) else null }
+                        .joinToString("\n")
+            }
+
+        } catch (e: Exception) {
+            e.toString()
+        }
+    }
+
+    private fun record(sql: String, plan: String, time: Long, rows: Int) {
+        synchronized(stats) {
+            stats.getOrPut(sql) { Stats(sql, plan) }.apply {
+                executions++
+                totalTime += time
+                maxTime = maxOf(maxTime, time)
+                this.rows = rows
+            }
+        }
+    }
+
+    private fun query(db: SupportSQLiteDatabase, query: SupportSQLiteQuery, run: () -> Cursor): Cursor {
+        if (!isEnabled) {
+            return run()
+        }
+
+        val sql = query.sql
+
+        val plan = planFor(db, sql) { ExplainQuery(query) }
+
+        val start = System.nanoTime()
+
+        return object : CursorWrapper(run()) {
+            override fun close() {
+                if (!isClosed) {
+                    record(sql, plan, System.nanoTime() - start, count)
+                }
+
+                super.close()
+            }
+        }
+    }
+
+    private fun <T> execute(
+            db: SupportSQLiteDatabase,
+            sql: String,
+            explain: () -> ExplainQuery,
+            run: () -> T,
+            rows: (T) -> Int): T {
+
+        if (!isEnabled) {
+            return run()
+        }
+
+        val plan = planFor(db, sql, explain)
+
+        val start = System.nanoTime()
+
+        return run().also {
+            record(sql, plan, System.nanoTime() - start, rows(it))
+        }
+    }
+
+    /**
+     * `EXPLAIN QUERY PLAN` of the statement, with the same arguments bound.
+     */
+    private class ExplainQuery(
+            private val query: String,
+            private val bind: (SupportSQLiteProgram) -> Unit,
+            private val argCount: Int) : SupportSQLiteQuery {
+
+        constructor(query: SupportSQLiteQuery) : this(query.sql, query::bindTo, query.argCount)
+
+        override fun getSql() = "EXPLAIN QUERY PLAN $query"
+
+        override fun getArgCount() = argCount
+
+        override fun bindTo(statement: SupportSQLiteProgram) {
+            bind(statement)
+        }
+    }
+
+    /**
+     * Wraps databases opened by the delegate, so that their statements are profiled.
+     */
+    class OpenHelperFactory(
+            private val delegate: SupportSQLiteOpenHelper.Factory,
+            private val profiler: QueryProfiler) : SupportSQLiteOpenHelper.Factory {
+
+        override fun create(configuration: SupportSQLiteOpenHelper.Configuration): SupportSQLiteOpenHelper {
+            return OpenHelper(delegate.create(configuration), profiler)
+        }
+    }
+
+    private class OpenHelper(
+            private val delegate: SupportSQLiteOpenHelper,
+            private val profiler: QueryProfiler) : SupportSQLiteOpenHelper by delegate {
+
+        private var database: Database? = null
+
+        override fun getWritableDatabase(): SupportSQLiteDatabase {
+            return wrap(delegate.writableDatabase)
+        }
+
+        override fun getReadableDatabase(): SupportSQLiteDatabase {
+            return wrap(delegate.readableDatabase)
+        }
+
+        @Synchronized
+        private fun wrap(db: SupportSQLiteDatabase): SupportSQLiteDatabase {
+            return database?.takeIf { it.delegate === db } ?: Database(db, profiler).also {
+                database = it
+            }
+        }
+    }
+
+    private class Database(
+            val delegate: SupportSQLiteDatabase,
+            private val profiler: QueryProfiler) : SupportSQLiteDatabase by delegate {
+
+        override fun query(query: SupportSQLiteQuery): Cursor {
+            return profiler.query(delegate, query) { delegate.query(query) }
+        }
+
+        override fun query(query: SupportSQLiteQuery, cancellationSignal: CancellationSignal?): Cursor {
+            return profiler.query(delegate, query) { delegate.query(query, cancellationSignal) }
+        }
+
+        override fun compileStatement(sql: String): SupportSQLiteStatement {
+            return Statement(delegate.compileStatement(sql), sql, delegate, profiler)
+        }
+    }
+
+    /**
+     * Keeps bound arguments while profiling, to get the query plan for the same values.
+     */
+    private class Statement(
+            private val delegate: SupportSQLiteStatement,
+            private val sql: String,
+            private val db: SupportSQLiteDatabase,
+            private val profiler: QueryProfiler) : SupportSQLiteStatement by delegate {
+
+        private val arguments = HashMap<Int, Any?>()
+
+        private fun explain() = ExplainQuery(sql, { program ->
+            arguments.forEach { (index, value) ->
+                when (value) {
+                    null -> program.bindNull(index)
+                    is Long -> program.bindLong(index, value)
+                    is Double -> program.bindDouble(index, value)
+                    is String -> program.bindString(index, value)
+                    is ByteArray -> program.bindBlob(index, value)
+                }
+            }
+        }, arguments.size)
+
+        override fun bindNull(index: Int) {
+            if (profiler.isEnabled) arguments[index] = null
+            delegate.bindNull(index)
+        }
+
+        override fun bindLong(index: Int, value: Long) {
+            if (profiler.isEnabled) arguments[index] = value
+            delegate.bindLong(index, value)
+        }
+
+        override fun bindDouble(index: Int, value: Double) {
+            if (profiler.isEnabled) arguments[index] = value
+            delegate.bindDouble(index, value)
+        }
+
+        override fun bindString(index: Int, value: String) {
+            if (profiler.isEnabled) arguments[index] = value
+            delegate.bindString(index, value)
+        }
+
+        override fun bindBlob(index: Int, value: ByteArray) {
+            if (profiler.isEnabled) arguments[index] = value
+            delegate.bindBlob(index, value)
+        }
+
+        override fun clearBindings() {
+            arguments.clear()
+            delegate.clearBindings()
+        }
+
+        override fun execute() {
+            profiler.execute(db, sql, ::explain, { delegate.execute() }, { 0 })
+        }
+
+        override fun executeUpdateDelete(): Int {
+            return profiler.execute(db, sql, ::explain, { delegate.executeUpdateDelete() }, { it })
+        }
+
+        override fun executeInsert(): Long {
+            return profiler.execute(db, sql, ::explain, { delegate.executeInsert() }, { if (it != -1L) 1 else 0 })
+        }
+
+        override fun simpleQueryForLong(): Long {
+            return profiler.execute(db, sql, ::explain, { delegate.simpleQueryForLong() }, { 1 })
+        }
+
+        override fun simpleQueryForString(): String? {
+            return profiler.execute(db, sql, ::explain, { delegate.simpleQueryForString() }, { 1 })
+        }
+    }
+}
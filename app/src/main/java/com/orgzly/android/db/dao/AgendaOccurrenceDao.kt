@@ -0,0 +1,79 @@
+package com.orgzly.android.db.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.orgzly.android.db.entity.AgendaNote
+import com.orgzly.android.db.entity.AgendaOccurrence
+
+@Dao
+abstract class AgendaOccurrenceDao {
+    data class Range(
+            val noteId: Long,
+            val generation: Long,
+            val timeType: Int,
+            val orgRangeId: Long,
+            val string: String)
+
+    /**
+     * Active scheduled times, deadlines and events of notes whose occurrences are not expanded.
+     */
+    @Query("""
+        SELECT n.id AS noteId, n.generation, ${AgendaOccurrence.SCHEDULED} AS timeType, r.id AS orgRangeId, r.string
+        FROM notes n
+        JOIN org_ranges r ON r.id = n.scheduled_range_id
+        WHERE n.scheduled_is_active = 1 AND n.id NOT IN (SELECT note_id FROM agenda_notes)
+
+        UNION ALL
+
+        SELECT n.id, n.generation, ${AgendaOccurrence.DEADLINE}, r.id, r.string
+        FROM notes n
+        JOIN org_ranges r ON r.id = n.deadline_range_id
+        WHERE n.deadline_is_active = 1 AND n.id NOT IN (SELECT note_id FROM agenda_notes)
+
+        UNION ALL
+
+        SELECT n.id, n.generation, ${AgendaOccurrence.EVENT}, r.id, r.string
+        FROM note_events e
+        JOIN notes n ON n.id = e.note_id
+        JOIN org_ranges r ON r.id = e.org_range_id
+        WHERE n.id NOT IN (SELECT note_id FROM agenda_notes)
+    """)
+    abstract fun getUnexpandedRanges(): List<Range>
+
+    @Query("""
+        DELETE FROM agenda_occurrences WHERE note_id IN ($STALE_NOTES)
+    """)
+    abstract fun deleteStale(horizonStart: Long, horizonEnd: Long): Int
+
+    @Query("""
+        DELETE FROM agenda_notes WHERE note_id IN ($STALE_NOTES)
+    """)
+    abstract fun deleteStaleNotes(horizonStart: Long, horizonEnd: Long): Int
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    abstract fun insert(occurrences: List<AgendaOccurrence>)
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract fun insertNotes(notes: Collection<AgendaNote>)
+
+    @Query("DELETE FROM agenda_notes")
+    abstract fun deleteAllNotes()
+
+    @Query("DELETE FROM agenda_occurrences")
+    abstract fun deleteAll()
+
+    companion object {
+        /*
+         * Notes changed since they were expanded,
+         * or expanded for a horizon which doesn't start today or ends too soon.
+         */
+        private const val STALE_NOTES = """
+            SELECT a.note_id
+            FROM agenda_notes a
+            JOIN notes n ON n.id = a.note_id
+            WHERE a.generation != n.generation OR a.horizon_start != :horizonStart OR a.horizon_end < :horizonEnd
+        """
+    }
+}
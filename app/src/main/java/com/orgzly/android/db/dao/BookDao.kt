@@ -11,6 +11,8 @@ import com.orgzly.android.db.entity.BookAction
 
 @Dao
 abstract class BookDao : BaseDao<Book> {
+    data class Generation(val id: Long, val name: String, val generation: Long)
+
     @Query("SELECT * FROM books WHERE id = :id")
     abstract fun get(id: Long): Book?
 
@@ -20,6 +22,16 @@ abstract class BookDao : BaseDao<Book> {
     @Query("SELECT * FROM books WHERE id = :id")
     abstract fun getLiveData(id: Long): LiveData<Book> // null not allowed, use List
 
+    @Query("SELECT id, name, generation FROM books")
+    abstract fun getGenerations(): List<Generation>
+
+    @Query("SELECT id, name, generation FROM books")
+    abstract fun getGenerationsLiveData(): LiveData<List<Generation>>
+
+    /** Called once after notes are inserted, which triggers do not track. */
+    @Query("UPDATE books SET generation = generation + 1 WHERE id = :id")
+    abstract fun incrementGeneration(id: Long)
+
     @Query("SELECT * FROM books WHERE last_action_type = :type")
     abstract fun getWithActionType(type: BookAction.Type): List<Book>
 
@@ -1,5 +1,6 @@
 package com.orgzly.android.db.dao
 
+import android.database.Cursor
 import androidx.lifecycle.LiveData
 import androidx.room.Dao
 import androidx.room.Query
@@ -36,6 +37,30 @@ abstract class NoteDao : BaseDao<Note> {
     @Query("SELECT * FROM notes WHERE id IN (:ids) ORDER BY lft DESC LIMIT 1")
     abstract fun getLast(ids: Set<Long>): Note?
 
+    /**
+     * Only the columns needed to write the book, without joins of [NoteViewDao.QUERY].
+     * Includes the text of note from the last export, if still valid for the settings.
+     */
+    @Query("""
+        SELECT
+        notes.id, notes.lft, notes.level, notes.generation,
+        notes.title, notes.tags, notes.state, notes.priority, notes.content,
+        t_scheduled_range.string AS scheduled_range_string,
+        t_deadline_range.string AS deadline_range_string,
+        t_closed_range.string AS closed_range_string,
+        t_clock_range.string AS clock_range_string,
+        t_export_cache.text AS cached_text
+        FROM notes
+        LEFT JOIN org_ranges t_scheduled_range ON t_scheduled_range.id = notes.scheduled_range_id
+        LEFT JOIN org_ranges t_deadline_range ON t_deadline_range.id = notes.deadline_range_id
+        LEFT JOIN org_ranges t_closed_range ON t_closed_range.id = notes.closed_range_id
+        LEFT JOIN org_ranges t_clock_range ON t_clock_range.id = notes.clock_range_id
+        LEFT JOIN note_export_cache t_export_cache ON t_export_cache.note_id = notes.id AND t_export_cache.generation = notes.generation AND t_export_cache.settings = :settings
+        WHERE notes.book_id = :bookId AND notes.level > 0 AND notes.is_cut = 0
+        ORDER BY notes.lft
+    """)
+    abstract fun getForExportCursor(bookId: Long, settings: String): Cursor
+
     @Query("SELECT * FROM notes WHERE book_id = :bookId AND level = 1 AND $WHERE_EXISTING_NOTES ORDER BY lft")
     abstract fun getTopLevel(bookId: Long): List<Note>
 
@@ -344,10 +369,41 @@ abstract class NoteDao : BaseDao<Note> {
     @Query("UPDATE notes SET created_at= :time WHERE id = :noteId")
     abstract fun updateCreatedAtTime(noteId: Long, time: Long)
 
+    @Query("UPDATE notes SET $SET_PLANNING_TIMES WHERE id = :id")
+    abstract fun updatePlanningTimes(id: Long)
+
+    @Query("UPDATE notes SET $SET_PLANNING_TIMES WHERE book_id = :bookId AND $WHERE_HAS_PLANNING_TIMES")
+    abstract fun updatePlanningTimesForBook(bookId: Long)
+
+    /* Start of day depends on the time zone. */
+    @Query("UPDATE notes SET $SET_PLANNING_TIMES WHERE $WHERE_HAS_PLANNING_TIMES")
+    abstract fun updatePlanningTimesForAll()
+
     companion object {
         /* Every book has a root note with level 0. */
         const val WHERE_EXISTING_NOTES = "(is_cut = 0 AND level > 0)"
 
+        const val WHERE_HAS_PLANNING_TIMES = "(scheduled_range_id IS NOT NULL OR deadline_range_id IS NOT NULL OR closed_range_id IS NOT NULL)"
+
+        /**
+         * Copies start of note's scheduled, deadline and closed ranges to note itself.
+         */
+        @Language("RoomSql")
+        const val SET_PLANNING_TIMES = """
+            scheduled_time_timestamp = (SELECT t.timestamp FROM org_ranges r JOIN org_timestamps t ON t.id = r.start_timestamp_id WHERE r.id = notes.scheduled_range_id),
+            scheduled_time_start_of_day = (SELECT CAST(strftime('%s', t.timestamp / 1000, 'unixepoch', 'localtime', 'start of day', 'utc') AS INTEGER) * 1000 FROM org_ranges r JOIN org_timestamps t ON t.id = r.start_timestamp_id WHERE r.id = notes.scheduled_range_id),
+            scheduled_time_hour = (SELECT t.hour FROM org_ranges r JOIN org_timestamps t ON t.id = r.start_timestamp_id WHERE r.id = notes.scheduled_range_id),
+            scheduled_is_active = (SELECT t.is_active FROM org_ranges r JOIN org_timestamps t ON t.id = r.start_timestamp_id WHERE r.id = notes.scheduled_range_id),
+            deadline_time_timestamp = (SELECT t.timestamp FROM org_ranges r JOIN org_timestamps t ON t.id = r.start_timestamp_id WHERE r.id = notes.deadline_range_id),
+            deadline_time_start_of_day = (SELECT CAST(strftime('%s', t.timestamp / 1000, 'unixepoch', 'localtime', 'start of day', 'utc') AS INTEGER) * 1000 FROM org_ranges r JOIN org_timestamps t ON t.id = r.start_timestamp_id WHERE r.id = notes.deadline_range_id),
+            deadline_time_hour = (SELECT t.hour FROM org_ranges r JOIN org_timestamps t ON t.id = r.start_timestamp_id WHERE r.id = notes.deadline_range_id),
+            deadline_is_active = (SELECT t.is_active FROM org_ranges r JOIN org_timestamps t ON t.id = r.start_timestamp_id WHERE r.id = notes.deadline_range_id),
+            closed_time_timestamp = (SELECT t.timestamp FROM org_ranges r JOIN org_timestamps t ON t.id = r.start_timestamp_id WHERE r.id = notes.closed_range_id),
+            closed_time_start_of_day = (SELECT CAST(strftime('%s', t.timestamp / 1000, 'unixepoch', 'localtime', 'start of day', 'utc') AS INTEGER) * 1000 FROM org_ranges r JOIN org_timestamps t ON t.id = r.start_timestamp_id WHERE r.id = notes.closed_range_id),
+            closed_time_hour = (SELECT t.hour FROM org_ranges r JOIN org_timestamps t ON t.id = r.start_timestamp_id WHERE r.id = notes.closed_range_id),
+            closed_is_active = (SELECT t.is_active FROM org_ranges r JOIN org_timestamps t ON t.id = r.start_timestamp_id WHERE r.id = notes.closed_range_id)
+        """
+
         @Language("RoomSql")
         const val SELECT_ANCESTORS_IDS_FOR_IDS = """
             SELECT DISTINCT a.id
@@ -1,5 +1,6 @@
 package com.orgzly.android.db.dao
 
+import android.database.Cursor
 import androidx.room.Dao
 import androidx.room.Query
 import androidx.room.Transaction
@@ -17,6 +18,18 @@ abstract class NotePropertyDao : BaseDao<NoteProperty> {
     @Query("SELECT * FROM note_properties")
     abstract fun getAll(): List<NoteProperty>
 
+    /**
+     * Properties of all book's notes, in the same order as notes are exported.
+     */
+    @Query("""
+        SELECT note_properties.note_id, notes.lft AS note_lft, note_properties.name, note_properties.value
+        FROM note_properties
+        JOIN notes ON notes.id = note_properties.note_id
+        WHERE notes.book_id = :bookId AND notes.level > 0 AND notes.is_cut = 0
+        ORDER BY notes.lft, note_properties.position
+    """)
+    abstract fun getForBookCursor(bookId: Long): Cursor
+
     @Transaction
     open fun upsert(noteId: Long, name: String, value: String) {
         val properties = get(noteId, name)
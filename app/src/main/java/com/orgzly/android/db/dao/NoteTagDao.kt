@@ -0,0 +1,75 @@
+package com.orgzly.android.db.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import androidx.room.Transaction
+import com.orgzly.android.db.OrgzlyDatabase
+import com.orgzly.android.db.entity.NoteTag
+
+@Dao
+abstract class NoteTagDao : BaseDao<NoteTag> {
+    @Query("SELECT * FROM note_tags WHERE note_id = :noteId")
+    abstract fun get(noteId: Long): List<NoteTag>
+
+    @Query("DELETE FROM note_tags WHERE note_id = :noteId AND inherited = 0")
+    abstract fun deleteOwn(noteId: Long)
+
+    /* Tags repeated in a note are ignored. */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    abstract fun insertIgnoring(tags: List<NoteTag>)
+
+    @Transaction
+    open fun replaceOwn(noteId: Long, tags: List<String>) {
+        deleteOwn(noteId)
+        insertIgnoring(tags.map { NoteTag(noteId, it, false) })
+    }
+
+    /**
+     * Recalculate inherited tags for all notes in subtrees.
+     * Must be called after their ancestors or their ancestors' own tags are updated.
+     */
+    @Transaction
+    open fun updateInheritedForSubtrees(ids: Set<Long>) {
+        ids.chunked(OrgzlyDatabase.SQLITE_MAX_VARIABLE_NUMBER).forEach { chunk ->
+            deleteInheritedForSubtreesChunk(chunk)
+            insertInheritedForSubtreesChunk(chunk)
+        }
+    }
+
+    @Query("""
+        DELETE FROM note_tags
+        WHERE inherited = 1 AND note_id IN (
+            SELECT DISTINCT d.id
+            FROM notes n, notes d
+            WHERE d.book_id = n.book_id AND n.id IN (:ids) AND d.is_cut = 0 AND n.lft <= d.lft AND d.rgt <= n.rgt
+        )
+    """)
+    abstract fun deleteInheritedForSubtreesChunk(ids: List<Long>)
+
+    @Query("""
+        INSERT OR IGNORE INTO note_tags (note_id, tag, inherited)
+        SELECT a.note_id, t.tag, 1
+        FROM note_ancestors a
+        JOIN note_tags t ON (t.note_id = a.ancestor_note_id AND t.inherited = 0)
+        WHERE a.note_id IN (
+            SELECT DISTINCT d.id
+            FROM notes n, notes d
+            WHERE d.book_id = n.book_id AND n.id IN (:ids) AND d.is_cut = 0 AND n.lft <= d.lft AND d.rgt <= n.rgt
+        )
+    """)
+    abstract fun insertInheritedForSubtreesChunk(ids: List<Long>)
+
+    /**
+     * Calculate inherited tags for all notes in the book, once their ancestors are known.
+     */
+    @Query("""
+        INSERT OR IGNORE INTO note_tags (note_id, tag, inherited)
+        SELECT a.note_id, t.tag, 1
+        FROM note_ancestors a
+        JOIN note_tags t ON (t.note_id = a.ancestor_note_id AND t.inherited = 0)
+        WHERE a.book_id = :bookId
+    """)
+    abstract fun insertInheritedForBook(bookId: Long)
+}
@@ -0,0 +1,105 @@
+package com.orgzly.android.db.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.orgzly.android.db.entity.ReminderSchedule
+
+@Dao
+abstract class ReminderScheduleDao {
+    data class Time(
+            val noteId: Long,
+            val generation: Long,
+            val timeType: Int,
+            val orgRangeId: Long,
+            val orgTimestampString: String)
+
+    data class ScheduledTime(
+            val noteId: Long,
+            val bookId: Long,
+            val bookName: String,
+            val title: String,
+            val timeType: Int,
+            val orgTimestampString: String,
+            val fireTime: Long)
+
+    /**
+     * Times of notes which are not in the schedule.
+     */
+    @Query("""
+        SELECT n.id AS noteId, n.generation, ${ReminderTimeDao.SCHEDULED_TIME} AS timeType, r.id AS orgRangeId, t.string AS orgTimestampString
+        FROM notes n
+        JOIN org_ranges r ON r.id = n.scheduled_range_id
+        JOIN org_timestamps t ON t.id = r.start_timestamp_id
+        WHERE t.is_active = 1 AND n.id NOT IN (SELECT note_id FROM reminder_schedule)
+
+        UNION ALL
+
+        SELECT n.id, n.generation, ${ReminderTimeDao.DEADLINE_TIME}, r.id, t.string
+        FROM notes n
+        JOIN org_ranges r ON r.id = n.deadline_range_id
+        JOIN org_timestamps t ON t.id = r.start_timestamp_id
+        WHERE t.is_active = 1 AND n.id NOT IN (SELECT note_id FROM reminder_schedule)
+
+        UNION ALL
+
+        SELECT n.id, n.generation, ${ReminderTimeDao.EVENT_TIME}, r.id, t.string
+        FROM note_events e
+        JOIN notes n ON n.id = e.note_id
+        JOIN org_ranges r ON r.id = e.org_range_id
+        JOIN org_timestamps t ON t.id = r.start_timestamp_id
+        WHERE n.id NOT IN (SELECT note_id FROM reminder_schedule)
+    """)
+    abstract fun getUnscheduledTimes(): List<Time>
+
+    /**
+     * Deletes times of notes changed since they were scheduled,
+     * or scheduled using a different default time of day.
+     */
+    @Query("""
+        DELETE FROM reminder_schedule WHERE default_time_of_day != :defaultTimeOfDay OR note_id IN (
+            SELECT s.note_id
+            FROM reminder_schedule s
+            JOIN notes n ON n.id = s.note_id
+            WHERE s.generation != n.generation)
+    """)
+    abstract fun deleteStale(defaultTimeOfDay: Int): Int
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract fun insert(times: List<ReminderSchedule>)
+
+    /**
+     * Reminders of enabled types firing in the interval, for notes not in one of the done states.
+     * Uses the index on fire time, so getting only the next one is cheap.
+     */
+    @Query("""
+        SELECT
+        s.note_id AS noteId,
+        n.book_id AS bookId,
+        coalesce(b.title, b.name) AS bookName,
+        n.title,
+        s.time_type AS timeType,
+        t.string AS orgTimestampString,
+        s.fire_time AS fireTime
+        FROM reminder_schedule s
+        JOIN notes n ON n.id = s.note_id
+        JOIN books b ON b.id = n.book_id
+        JOIN org_ranges r ON r.id = s.org_range_id
+        JOIN org_timestamps t ON t.id = r.start_timestamp_id
+        WHERE s.fire_time >= :from AND (:before IS NULL OR s.fire_time < :before)
+        AND s.time_type IN (:timeTypes)
+        AND coalesce(n.state, '') NOT IN (:doneKeywords)
+        ORDER BY s.fire_time
+        LIMIT :limit
+    """)
+    abstract fun get(
+            from: Long,
+            before: Long?,
+            timeTypes: Collection<Int>,
+            doneKeywords: Collection<String>,
+            limit: Int): List<ScheduledTime>
+
+    @Query("DELETE FROM reminder_schedule")
+    abstract fun deleteAll()
+}
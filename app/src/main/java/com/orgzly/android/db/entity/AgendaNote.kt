@@ -0,0 +1,34 @@
+package com.orgzly.android.db.entity
+
+import androidx.room.*
+
+/**
+ * Note whose [AgendaOccurrence]s are up to date, as long as its generation
+ * has not changed and the horizon still starts today.
+ */
+@Entity(
+        tableName = "agenda_notes",
+
+        foreignKeys = [
+            ForeignKey(
+                    entity = Note::class,
+                    parentColumns = arrayOf("id"),
+                    childColumns = arrayOf("note_id"),
+                    onDelete = ForeignKey.CASCADE)
+        ]
+)
+data class AgendaNote(
+        @PrimaryKey
+        @ColumnInfo(name = "note_id")
+        val noteId: Long,
+
+        val generation: Long,
+
+        /** First day of expanded occurrences. */
+        @ColumnInfo(name = "horizon_start")
+        val horizonStart: Long,
+
+        /** Day after the last day of expanded occurrences. */
+        @ColumnInfo(name = "horizon_end")
+        val horizonEnd: Long
+)
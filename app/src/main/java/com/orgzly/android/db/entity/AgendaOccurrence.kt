@@ -0,0 +1,50 @@
+package com.orgzly.android.db.entity
+
+import androidx.room.*
+
+/**
+ * Day on which a note's active scheduled time, deadline or event appears in agenda,
+ * with repeaters expanded up to the horizon recorded in [AgendaNote].
+ *
+ * Overdue scheduled times and deadlines are stored for the first day of the horizon only.
+ */
+@Entity(
+        tableName = "agenda_occurrences",
+
+        primaryKeys = [ "note_id", "time_type", "org_range_id", "day", "is_overdue" ],
+
+        foreignKeys = [
+            ForeignKey(
+                    entity = Note::class,
+                    parentColumns = arrayOf("id"),
+                    childColumns = arrayOf("note_id"),
+                    onDelete = ForeignKey.CASCADE)
+        ],
+
+        indices = [
+            Index("day")
+        ]
+)
+data class AgendaOccurrence(
+        @ColumnInfo(name = "note_id")
+        val noteId: Long,
+
+        /** One of [SCHEDULED], [DEADLINE] or [EVENT]. */
+        @ColumnInfo(name = "time_type")
+        val timeType: Int,
+
+        @ColumnInfo(name = "org_range_id")
+        val orgRangeId: Long,
+
+        /** Start of the day, in local time. */
+        val day: Long,
+
+        @ColumnInfo(name = "is_overdue")
+        val isOverdue: Boolean
+) {
+    companion object {
+        const val SCHEDULED = 0
+        const val DEADLINE = 1
+        const val EVENT = 2
+    }
+}
@@ -48,7 +48,11 @@ data class Book constructor(
         val lastAction: BookAction? = null,
 
         @ColumnInfo(name = "is_modified")
-        val isModified: Boolean = false
+        val isModified: Boolean = false,
+
+        /* Incremented by triggers on every change of the book or its notes. */
+        @ColumnInfo(defaultValue = "0")
+        val generation: Long = 0
 ) {
 
     override fun toString(): String {
@@ -49,7 +49,10 @@ import com.google.gson.Gson
             Index("descendants_count"),
             Index("scheduled_range_id"),
             Index("deadline_range_id"),
-            Index("closed_range_id")
+            Index("closed_range_id"),
+            Index("scheduled_time_timestamp"),
+            Index("deadline_time_timestamp"),
+            Index("closed_time_timestamp")
         ]
 )
 data class Note(
@@ -87,6 +90,51 @@ data class Note(
         @ColumnInfo(name = "clock_range_id")
         val clockRangeId: Long? = null,
 
+        /* Incremented by triggers on every change of what is written to the book file. */
+        @ColumnInfo(defaultValue = "0")
+        val generation: Long = 0,
+
+        /*
+         * Start of scheduled, deadline and closed ranges, copied from their timestamps
+         * whenever range IDs are updated, so they can be filtered and sorted on without joins.
+         */
+
+        @ColumnInfo(name = "scheduled_time_timestamp")
+        val scheduledTimeTimestamp: Long? = null,
+
+        @ColumnInfo(name = "scheduled_time_start_of_day")
+        val scheduledTimeStartOfDay: Long? = null,
+
+        @ColumnInfo(name = "scheduled_time_hour")
+        val scheduledTimeHour: Int? = null,
+
+        @ColumnInfo(name = "scheduled_is_active")
+        val scheduledIsActive: Boolean? = null,
+
+        @ColumnInfo(name = "deadline_time_timestamp")
+        val deadlineTimeTimestamp: Long? = null,
+
+        @ColumnInfo(name = "deadline_time_start_of_day")
+        val deadlineTimeStartOfDay: Long? = null,
+
+        @ColumnInfo(name = "deadline_time_hour")
+        val deadlineTimeHour: Int? = null,
+
+        @ColumnInfo(name = "deadline_is_active")
+        val deadlineIsActive: Boolean? = null,
+
+        @ColumnInfo(name = "closed_time_timestamp")
+        val closedTimeTimestamp: Long? = null,
+
+        @ColumnInfo(name = "closed_time_start_of_day")
+        val closedTimeStartOfDay: Long? = null,
+
+        @ColumnInfo(name = "closed_time_hour")
+        val closedTimeHour: Int? = null,
+
+        @ColumnInfo(name = "closed_is_active")
+        val closedIsActive: Boolean? = null,
+
         @Embedded(prefix = "")
         val position: NotePosition
 ) {
@@ -0,0 +1,30 @@
+package com.orgzly.android.db.entity
+
+import androidx.room.*
+
+/**
+ * Note as it was last written to the book file.
+ * Valid only while note's generation and settings used for writing are unchanged.
+ */
+@Entity(
+        tableName = "note_export_cache",
+
+        foreignKeys = [
+            ForeignKey(
+                    entity = Note::class,
+                    parentColumns = arrayOf("id"),
+                    childColumns = arrayOf("note_id"),
+                    onDelete = ForeignKey.CASCADE)
+        ]
+)
+data class NoteExportCache(
+        @PrimaryKey
+        @ColumnInfo(name = "note_id")
+        val noteId: Long,
+
+        val generation: Long,
+
+        val settings: String,
+
+        val text: String
+)
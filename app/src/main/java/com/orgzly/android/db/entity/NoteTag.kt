@@ -0,0 +1,34 @@
+package com.orgzly.android.db.entity
+
+import androidx.room.*
+
+/**
+ * Note's tag, either its own or inherited from one of its ancestors.
+ * Tags are compared case-insensitively.
+ */
+@Entity(
+        tableName = "note_tags",
+
+        primaryKeys = [ "note_id", "tag", "inherited" ],
+
+        foreignKeys = [
+            ForeignKey(
+                    entity = Note::class,
+                    parentColumns = arrayOf("id"),
+                    childColumns = arrayOf("note_id"),
+                    onDelete = ForeignKey.CASCADE)
+        ],
+
+        indices = [
+            Index("tag", "inherited")
+        ]
+)
+data class NoteTag(
+        @ColumnInfo(name = "note_id")
+        val noteId: Long,
+
+        @ColumnInfo(collate = ColumnInfo.NOCASE)
+        val tag: String,
+
+        val inherited: Boolean
+)
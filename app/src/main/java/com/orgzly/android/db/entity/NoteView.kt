@@ -2,6 +2,9 @@ package com.orgzly.android.db.entity
 
 import androidx.room.ColumnInfo
 import androidx.room.Embedded
+import androidx.room.Ignore
+import com.orgzly.android.db.OrgRangeCache
+import com.orgzly.org.datetime.OrgRange
 
 
 data class NoteView(
@@ -13,49 +16,15 @@ data class NoteView(
 
         @ColumnInfo(name = "scheduled_range_string")
         val scheduledRangeString : String? = null,
-        @ColumnInfo(name = "scheduled_time_string")
-        val scheduledTimeString : String? = null,
-        @ColumnInfo(name = "scheduled_time_end_string")
-        val scheduledTimeEndString : String? = null,
-        @ColumnInfo(name = "scheduled_time_timestamp")
-        val scheduledTimeTimestamp : Long? = null,
-        @ColumnInfo(name = "scheduled_time_start_of_day")
-        val scheduledTimeStartOfDay : Long? = null,
-        @ColumnInfo(name = "scheduled_time_hour")
-        val scheduledTimeHour : Int? = null,
 
         @ColumnInfo(name = "deadline_range_string")
         val deadlineRangeString : String? = null,
-        @ColumnInfo(name = "deadline_time_string")
-        val deadlineTimeString : String? = null,
-        @ColumnInfo(name = "deadline_time_end_string")
-        val deadlineTimeEndString : String? = null,
-        @ColumnInfo(name = "deadline_time_timestamp")
-        val deadlineTimeTimestamp : Long? = null,
-        @ColumnInfo(name = "deadline_time_start_of_day")
-        val deadlineTimeStartOfDay : Long? = null,
-        @ColumnInfo(name = "deadline_time_hour")
-        val deadlineTimeHour : Int? = null,
 
         @ColumnInfo(name = "closed_range_string")
         val closedRangeString : String? = null,
-        @ColumnInfo(name = "closed_time_string")
-        val closedTimeString : String? = null,
-        @ColumnInfo(name = "closed_time_end_string")
-        val closedTimeEndString : String? = null,
-        @ColumnInfo(name = "closed_time_timestamp")
-        val closedTimeTimestamp : Long? = null,
-        @ColumnInfo(name = "closed_time_start_of_day")
-        val closedTimeStartOfDay : Long? = null,
-        @ColumnInfo(name = "closed_time_hour")
-        val closedTimeHour : Int? = null,
 
         @ColumnInfo(name = "clock_range_string")
         val clockRangeString : String? = null,
-        @ColumnInfo(name = "clock_time_string")
-        val clockTimeString : String? = null,
-        @ColumnInfo(name = "clock_time_end_string")
-        val clockTimeEndString : String? = null,
 
         @ColumnInfo(name = "event_string")
         val eventString : String? = null,
@@ -66,9 +35,31 @@ data class NoteView(
         @ColumnInfo(name = "event_hour")
         val eventHour : Int? = null,
 
+        /* Set for agenda queries only, see AgendaOccurrence. */
+        @ColumnInfo(name = "agenda_time_type")
+        val agendaTimeType: Int? = null,
+        @ColumnInfo(name = "agenda_day")
+        val agendaDay: Long? = null,
+        @ColumnInfo(name = "agenda_is_overdue")
+        val agendaIsOverdue: Boolean? = null,
+
         @ColumnInfo(name = "book_name")
         val bookName: String
 ) {
+    /* Parsed on first use. Shared (see OrgRangeCache), must not be modified. */
+
+    @delegate:Ignore
+    val scheduledRange: OrgRange? by lazy { scheduledRangeString?.let { OrgRangeCache.parse(it) } }
+
+    @delegate:Ignore
+    val deadlineRange: OrgRange? by lazy { deadlineRangeString?.let { OrgRangeCache.parse(it) } }
+
+    @delegate:Ignore
+    val closedRange: OrgRange? by lazy { closedRangeString?.let { OrgRangeCache.parse(it) } }
+
+    @delegate:Ignore
+    val eventRange: OrgRange? by lazy { eventString?.let { OrgRangeCache.parse(it) } }
+
     fun hasInheritedTags(): Boolean {
         return inheritedTags != null
     }
@@ -0,0 +1,49 @@
+package com.orgzly.android.db.entity
+
+import androidx.room.*
+
+/**
+ * Time at which a reminder for a note's scheduled time, deadline or event fires.
+ *
+ * Reminders do not use repeaters, so the time only depends on the timestamp and
+ * on the default time of day. It is computed once and kept until the note changes.
+ */
+@Entity(
+        tableName = "reminder_schedule",
+
+        primaryKeys = [ "note_id", "time_type", "org_range_id" ],
+
+        foreignKeys = [
+            ForeignKey(
+                    entity = Note::class,
+                    parentColumns = arrayOf("id"),
+                    childColumns = arrayOf("note_id"),
+                    onDelete = ForeignKey.CASCADE)
+        ],
+
+        indices = [
+            Index("fire_time")
+        ]
+)
+data class ReminderSchedule(
+        @ColumnInfo(name = "note_id")
+        val noteId: Long,
+
+        /** One of ReminderTimeDao's time types. */
+        @ColumnInfo(name = "time_type")
+        val timeType: Int,
+
+        @ColumnInfo(name = "org_range_id")
+        val orgRangeId: Long,
+
+        /** Note's generation the time was computed for. */
+        val generation: Long,
+
+        /** Time of day used for timestamps without time, in minutes. */
+        @ColumnInfo(name = "default_time_of_day")
+        val defaultTimeOfDay: Int,
+
+        /** Null if the reminder never fires. */
+        @ColumnInfo(name = "fire_time")
+        val fireTime: Long?
+)
@@ -13,31 +13,53 @@ import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
 import org.eclipse.jgit.api.MergeResult;
 import org.eclipse.jgit.api.ResetCommand;
-import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.StatusCommand;
 import org.eclipse.jgit.api.TransportCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryState;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 
 public class GitFileSynchronizer {
     private static String TAG = GitFileSynchronizer.class.getSimpleName();
 
+    /* Changes made to the working tree by others are noticed after at most this long. */
+    private static final long FULL_STATUS_INTERVAL = 30 * 60 * 1000;
+
     private Git git;
     private GitPreferences preferences;
 
+    /* Time the whole working tree was last found clean, or 0. */
+    private long cleanVerifiedAt = 0;
+
+    /* Files written to the working tree since, the only ones checked until the next full status. */
+    private final Set<String> writtenPaths = new HashSet<>();
+
+    /* Latest commits of files, found for HEAD with this ID. */
+    private ObjectId latestCommitsHead;
+    private final Map<String, RevCommit> latestCommits = new HashMap<>();
+
     public GitFileSynchronizer(Git g, GitPreferences prefs) {
         git = g;
         preferences = prefs;
@@ -135,6 +157,9 @@ public class GitFileSynchronizer {
             return true;
         }
 
+        /* Checkout below is forced, it must not overwrite changes made by others. */
+        ensureRepoIsFullyClean();
+
         String originalBranch = git.getRepository().getFullBranch();
         String mergeBranch = createMergeBranchName(repositoryPath, fileRevision);
         try {
@@ -185,6 +210,10 @@ public class GitFileSynchronizer {
     }
 
     private boolean doMerge(RevCommit mergeTarget) throws IOException, GitAPIException {
+        /* Conflicting merge is reset hard, which must not discard changes made by others. */
+        if (!isFastForwardOrUpToDate(mergeTarget)) {
+            ensureRepoIsFullyClean();
+        }
         MergeResult result = git.merge().include(mergeTarget).call();
         if (result.getMergeStatus().equals(MergeResult.MergeStatus.CONFLICTING)) {
             gitResetMerge();
@@ -251,6 +280,18 @@ public class GitFileSynchronizer {
         });
     }
 
+    private boolean isFastForwardOrUpToDate(RevCommit mergeTarget) throws IOException {
+        RevCommit head = currentHead();
+        if (head == null) {
+            return true;
+        }
+        try (RevWalk walk = new RevWalk(git.getRepository())) {
+            RevCommit headCommit = walk.parseCommit(head);
+            RevCommit targetCommit = walk.parseCommit(mergeTarget);
+            return walk.isMergedInto(headCommit, targetCommit) || walk.isMergedInto(targetCommit, headCommit);
+        }
+    }
+
     private void gitResetMerge() throws IOException, GitAPIException {
         git.getRepository().writeMergeCommitMsg(null);
         git.getRepository().writeMergeHeads(null);
@@ -351,10 +392,13 @@ public class GitFileSynchronizer {
     private RevCommit updateAndCommitFile(
             File sourceFile, String repositoryPath) throws IOException {
         File destinationFile = repoDirectoryFile(repositoryPath);
+        synchronized (this) {
+            writtenPaths.add(repositoryPath);
+        }
         MiscUtils.copyFile(sourceFile, destinationFile);
         try {
             git.add().addFilepattern(repositoryPath).call();
-            if (!gitRepoIsClean())
+            if (!gitRepoIsClean(false))
                 commit(String.format("Orgzly update: %s", repositoryPath));
         } catch (GitAPIException e) {
             throw new IOException("Failed to commit changes.");
@@ -387,21 +431,171 @@ public class GitFileSynchronizer {
         return log.iterator().next();
     }
 
+    /**
+     * Latest commits of files, the same as {@link #getLatestCommitOfFile(Uri)} would return,
+     * but found in a single walk over history. Kept until HEAD changes.
+     *
+     * Files which don't exist at HEAD are not included.
+     */
+    public synchronized Map<String, RevCommit> getLatestCommitsOfFiles(Collection<String> paths) throws IOException {
+        Map<String, RevCommit> result = new HashMap<>();
+
+        RevCommit head = currentHead();
+        if (head == null) {
+            return result;
+        }
+
+        if (!head.getId().equals(latestCommitsHead)) {
+            latestCommits.clear();
+            latestCommitsHead = head.getId();
+        }
+
+        Set<String> missing = new HashSet<>();
+        for (String path : paths) {
+            RevCommit commit = latestCommits.get(path);
+            if (commit != null) {
+                result.put(path, commit);
+            } else {
+                missing.add(path);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, RevCommit> found = findLatestCommitsOfFiles(head, missing);
+            latestCommits.putAll(found);
+            result.putAll(found);
+        }
+
+        return result;
+    }
+
+    /*
+     * Walks commits touching any of the files, newest first, until every file is found.
+     * File's latest commit is the newest one changing it from all of its parents
+     * to the content it has at HEAD.
+     */
+    private Map<String, RevCommit> findLatestCommitsOfFiles(RevCommit head, Set<String> paths) throws IOException {
+        Repository repository = git.getRepository();
+
+        Map<String, RevCommit> result = new HashMap<>();
+
+        Map<String, ObjectId> headBlobs = new HashMap<>();
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.setRecursive(true);
+            treeWalk.addTree(head.getTree());
+            treeWalk.setFilter(PathFilterGroup.createFromStrings(paths));
+            while (treeWalk.next()) {
+                headBlobs.put(treeWalk.getPathString(), treeWalk.getObjectId(0));
+            }
+        }
+
+        Set<String> remaining = new HashSet<>(headBlobs.keySet());
+        if (remaining.isEmpty()) {
+            return result;
+        }
+
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            revWalk.setTreeFilter(AndTreeFilter.create(
+                    PathFilterGroup.createFromStrings(remaining), TreeFilter.ANY_DIFF));
+            revWalk.markStart(revWalk.parseCommit(head.getId()));
+
+            for (RevCommit commit : revWalk) {
+                try (TreeWalk treeWalk = new TreeWalk(repository)) {
+                    treeWalk.setRecursive(true);
+                    treeWalk.addTree(commit.getTree());
+                    for (RevCommit parent : commit.getParents()) {
+                        revWalk.parseHeaders(parent);
+                        treeWalk.addTree(parent.getTree());
+                    }
+                    treeWalk.setFilter(AndTreeFilter.create(
+                            PathFilterGroup.createFromStrings(remaining), TreeFilter.ANY_DIFF));
+
+                    while (treeWalk.next()) {
+                        String path = treeWalk.getPathString();
+                        ObjectId blob = treeWalk.getObjectId(0);
+
+                        if (!blob.equals(headBlobs.get(path))) {
+                            continue;
+                        }
+
+                        boolean isChanged = true;
+                        for (int i = 1; i < treeWalk.getTreeCount(); i++) {
+                            if (blob.equals(treeWalk.getObjectId(i))) {
+                                isChanged = false;
+                                break;
+                            }
+                        }
+
+                        if (isChanged && remaining.remove(path)) {
+                            result.put(path, commit);
+                        }
+                    }
+                }
+
+                if (remaining.isEmpty()) {
+                    break;
+                }
+            }
+        }
+
+        return result;
+    }
+
     public String repoPath() {
         return git.getRepository().getWorkTree().getAbsolutePath();
     }
 
-    private boolean gitRepoIsClean() {
+    /**
+     * Full status of the working tree is only checked once in a while. Between those,
+     * only files written by this synchronizer are checked, as operations on the
+     * repository (commit, merge, checkout, reset) leave it clean when they succeed.
+     *
+     * Full status is always checked before operations which overwrite the working tree.
+     */
+    private synchronized boolean gitRepoIsClean(boolean fullStatus) {
         try {
-            Status status = git.status().call();
-            return !status.hasUncommittedChanges();
+            long now = System.currentTimeMillis();
+
+            if (fullStatus || cleanVerifiedAt == 0 || now - cleanVerifiedAt > FULL_STATUS_INTERVAL) {
+                boolean isClean = !git.status().call().hasUncommittedChanges();
+                if (isClean) {
+                    cleanVerifiedAt = now;
+                    writtenPaths.clear();
+                }
+                return isClean;
+            }
+
+            /* Interrupted merge, revert, etc. */
+            if (git.getRepository().getRepositoryState() != RepositoryState.SAFE) {
+                return false;
+            }
+
+            if (writtenPaths.isEmpty()) {
+                return true;
+            }
+
+            StatusCommand statusCommand = git.status();
+            for (String path : writtenPaths) {
+                statusCommand.addPath(path);
+            }
+            boolean isClean = !statusCommand.call().hasUncommittedChanges();
+            if (isClean) {
+                writtenPaths.clear();
+            }
+            return isClean;
+
         } catch (GitAPIException e) {
             return false;
         }
     }
 
     private void ensureRepoIsClean() throws IOException {
-        if (!gitRepoIsClean())
+        if (!gitRepoIsClean(false))
+            throw new IOException("Refusing to update because there are uncommitted changes.");
+    }
+
+    private void ensureRepoIsFullyClean() throws IOException {
+        if (!gitRepoIsClean(true))
             throw new IOException("Refusing to update because there are uncommitted changes.");
     }
 
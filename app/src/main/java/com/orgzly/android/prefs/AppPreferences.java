@@ -66,6 +66,8 @@ public class AppPreferences {
         setPrefsFromValues(getDefaultSharedPreferences(context), values.defaultPrefsValues);
         setPrefsFromValues(getStateSharedPreferences(context), values.statePrefsValues);
         setPrefsFromValues(getReposSharedPreferences(context), values.reposPrefsValues);
+
+        AppPreferencesSnapshot.invalidate();
     }
 
     @SuppressWarnings("unchecked")
@@ -105,6 +107,8 @@ public class AppPreferences {
         clearAllSharedPreferences(context);
 
         App.setDefaultPreferences(context, true);
+
+        AppPreferencesSnapshot.invalidate();
     }
 
     private static void clearAllSharedPreferences(Context context) {
@@ -156,6 +160,7 @@ public class AppPreferences {
     public static void isNotesContentDisplayedInSearch(Context context, boolean value) {
         String key = context.getResources().getString(R.string.pref_key_is_notes_content_displayed_in_search);
         getDefaultSharedPreferences(context).edit().putBoolean(key, value).apply();
+        AppPreferencesSnapshot.invalidate();
     }
 
     public static boolean isNotesContentFoldable(Context context) {
@@ -283,6 +288,7 @@ public class AppPreferences {
     public static void remindersForScheduledEnabled(Context context, boolean value) {
         String key = context.getResources().getString(R.string.pref_key_use_reminders_for_scheduled_times);
         getDefaultSharedPreferences(context).edit().putBoolean(key, value).apply();
+        AppPreferencesSnapshot.invalidate();
     }
 
     public static boolean remindersForDeadlineEnabled(Context context) {
@@ -294,6 +300,7 @@ public class AppPreferences {
     public static void remindersForDeadlineEnabled(Context context, boolean value) {
         String key = context.getResources().getString(R.string.pref_key_use_reminders_for_deadline_times);
         getDefaultSharedPreferences(context).edit().putBoolean(key, value).apply();
+        AppPreferencesSnapshot.invalidate();
     }
 
     public static boolean remindersForEventsEnabled(Context context) {
@@ -305,6 +312,7 @@ public class AppPreferences {
     public static void remindersForEventsEnabled(Context context, boolean value) {
         String key = context.getResources().getString(R.string.pref_key_use_reminders_for_event_times);
         getDefaultSharedPreferences(context).edit().putBoolean(key, value).apply();
+        AppPreferencesSnapshot.invalidate();
     }
 
     public static boolean remindersSound(Context context) {
@@ -365,6 +373,12 @@ public class AppPreferences {
         getDefaultSharedPreferences(context).edit().putBoolean(key, value).apply();
     }
 
+    public static boolean profileQueries(Context context) {
+        return getDefaultSharedPreferences(context).getBoolean(
+                context.getResources().getString(R.string.pref_key_profile_queries),
+                context.getResources().getBoolean(R.bool.pref_default_profile_queries));
+    }
+
     public static boolean showSyncNotifications(Context context) {
         return getDefaultSharedPreferences(context).getBoolean(
                 context.getResources().getString(R.string.pref_key_show_sync_notifications),
@@ -425,6 +439,7 @@ public class AppPreferences {
     public static void inheritedTagsInSearchResults(Context context, boolean value) {
         String key = context.getResources().getString(R.string.pref_key_display_inherited_tags_in_search_results);
         getDefaultSharedPreferences(context).edit().putBoolean(key, value).apply();
+        AppPreferencesSnapshot.invalidate();
     }
 
     public static String fontSize(Context context) {
@@ -538,6 +553,7 @@ public class AppPreferences {
         String key = context.getResources().getString(R.string.pref_key_states);
         getDefaultSharedPreferences(context).edit().putString(key, value).apply();
         updateStaticKeywords(context);
+        AppPreferencesSnapshot.invalidate();
     }
 
     /*
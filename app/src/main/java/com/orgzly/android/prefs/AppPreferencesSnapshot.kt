@@ -0,0 +1,97 @@
+package com.orgzly.android.prefs
+
+import android.content.Context
+import android.content.SharedPreferences
+import androidx.preference.PreferenceManager
+
+/**
+ * Values of preferences used for every displayed or processed note,
+ * read once instead of being looked up (and parsed) for each note.
+ *
+ * Snapshots are immutable. A new one, with a higher [version],
+ * is created after any of the preferences changes.
+ */
+data class AppPreferencesSnapshot(
+        val version: Int,
+        val doneKeywords: Set<String>,
+        val displayPlanning: Boolean,
+        val bookNameInSearchResults: Int,
+        val inheritedTagsInSearchResults: Boolean,
+        val isFontMonospaced: Boolean,
+        val isNotesContentDisplayedInList: Boolean,
+        val isNotesContentDisplayedInSearch: Boolean,
+        val isNotesContentFoldable: Boolean,
+        val contentLineCountDisplayed: Boolean,
+        val widgetDisplayBookName: Boolean,
+        val widgetDisplayCheckmarks: Boolean,
+        val remindersForScheduledEnabled: Boolean,
+        val remindersForDeadlineEnabled: Boolean,
+        val remindersForEventsEnabled: Boolean) {
+
+    fun isDone(state: String?): Boolean {
+        return state != null && doneKeywords.contains(state)
+    }
+
+    companion object {
+        private var current: AppPreferencesSnapshot? = null
+
+        private var version = 0
+
+        /* Referenced, as preferences only keep weak references to listeners. */
+        private var preferenceListener: SharedPreferences.OnSharedPreferenceChangeListener? = null
+
+        /**
+         * Current snapshot. Created on first use after a preference change.
+         */
+        @JvmStatic
+        @Synchronized
+        fun get(context: Context): AppPreferencesSnapshot {
+            current?.let { return it }
+
+            if (preferenceListener == null) {
+                preferenceListener = SharedPreferences.OnSharedPreferenceChangeListener { _, _ ->
+                    invalidate()
+                }.also {
+                    PreferenceManager.getDefaultSharedPreferences(context.applicationContext)
+                            .registerOnSharedPreferenceChangeListener(it)
+                }
+            }
+
+            return create(context, version).also { current = it }
+        }
+
+        /**
+         * Listeners are notified later when preferences are changed from
+         * a background thread, so setters of included preferences also call this.
+         */
+        @JvmStatic
+        @Synchronized
+        fun invalidate() {
+            current = null
+            version++
+        }
+
+        private fun create(context: Context, version: Int): AppPreferencesSnapshot {
+            /* Parsed here, as static keywords could still be updated after this change. */
+            val doneKeywords = StateWorkflows(AppPreferences.states(context))
+                    .flatMapTo(LinkedHashSet()) { it.doneKeywords }
+
+            return AppPreferencesSnapshot(
+                    version,
+                    doneKeywords,
+                    AppPreferences.displayPlanning(context),
+                    AppPreferences.bookNameInSearchResults(context).toInt(),
+                    AppPreferences.inheritedTagsInSearchResults(context),
+                    AppPreferences.isFontMonospaced(context),
+                    AppPreferences.isNotesContentDisplayedInList(context),
+                    AppPreferences.isNotesContentDisplayedInSearch(context),
+                    AppPreferences.isNotesContentFoldable(context),
+                    AppPreferences.contentLineCountDisplayed(context),
+                    AppPreferences.widgetDisplayBookName(context),
+                    AppPreferences.widgetDisplayCheckmarks(context),
+                    AppPreferences.remindersForScheduledEnabled(context),
+                    AppPreferences.remindersForDeadlineEnabled(context),
+                    AppPreferences.remindersForEventsEnabled(context))
+        }
+    }
+}
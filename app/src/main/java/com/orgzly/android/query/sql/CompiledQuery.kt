@@ -0,0 +1,33 @@
+package com.orgzly.android.query.sql
+
+import androidx.sqlite.db.SupportSQLiteProgram
+import androidx.sqlite.db.SupportSQLiteQuery
+
+/**
+ * SQL of a user query, with its arguments bound only when executed.
+ *
+ * The same instance can be executed repeatedly (by LiveData, for example),
+ * with relative times always resolved against the current time.
+ */
+class CompiledQuery(private val sql: String, private val arguments: List<SqlQuery.Argument>) : SupportSQLiteQuery {
+    override fun getSql(): String {
+        return sql
+    }
+
+    override fun getArgCount(): Int {
+        return arguments.size
+    }
+
+    override fun bindTo(statement: SupportSQLiteProgram) {
+        arguments.forEachIndexed { i, argument ->
+            when (val value = argument.resolve()) {
+                is Long -> statement.bindLong(i + 1, value)
+                else -> statement.bindString(i + 1, value.toString())
+            }
+        }
+    }
+
+    override fun toString(): String {
+        return sql
+    }
+}
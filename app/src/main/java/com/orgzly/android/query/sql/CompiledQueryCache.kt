@@ -0,0 +1,49 @@
+package com.orgzly.android.query.sql
+
+import android.content.Context
+import android.util.LruCache
+import com.orgzly.android.prefs.AppPreferences
+import com.orgzly.android.query.Query
+
+/**
+ * Compiled user queries, so that saved searches, agenda and widgets refreshing
+ * the same query don't parse and build SQL again and reuse prepared statements.
+ *
+ * Settings used while building SQL are part of the key, in order (it matters for sorting).
+ * So are selected columns, if the query is compiled for a subset of them.
+ */
+class CompiledQueryCache(private val context: Context, maxSize: Int = DEFAULT_MAX_SIZE) {
+    private data class Key(
+            val query: Query,
+            val todoKeywords: List<String>,
+            val doneKeywords: List<String>,
+            val defaultPriority: String,
+            val columns: List<String>?)
+
+    private val cache = LruCache<Key, CompiledQuery>(maxSize)
+
+    fun getOrCompile(
+            query: Query,
+            columns: Array<String>? = null,
+            compile: (Query) -> CompiledQuery): CompiledQuery {
+
+        val key = Key(
+                query,
+                AppPreferences.todoKeywordsSet(context).toList(),
+                AppPreferences.doneKeywordsSet(context).toList(),
+                AppPreferences.defaultPriority(context),
+                columns?.toList())
+
+        return cache.get(key) ?: compile(query).also {
+            cache.put(key, it)
+        }
+    }
+
+    fun clear() {
+        cache.evictAll()
+    }
+
+    companion object {
+        const val DEFAULT_MAX_SIZE = 64
+    }
+}
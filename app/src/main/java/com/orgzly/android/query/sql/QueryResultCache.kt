@@ -0,0 +1,140 @@
+package com.orgzly.android.query.sql
+
+import android.util.LruCache
+import androidx.sqlite.db.SupportSQLiteQuery
+import com.orgzly.android.db.entity.NoteView
+import com.orgzly.android.query.Condition
+import com.orgzly.android.query.Query
+import com.orgzly.android.query.QueryInterval
+import com.orgzly.org.datetime.OrgInterval
+import org.joda.time.DateTime
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.FutureTask
+
+/**
+ * Results of user queries, shared by agenda, widgets and everything else
+ * evaluating the same query, until one of the books the query can match changes.
+ *
+ * Queries are normalized by parsing them. Compiled SQL is part of the key,
+ * as it changes with settings used for building it. It is compared by identity,
+ * as [CompiledQueryCache] returns the same instance while the settings are unchanged.
+ *
+ * Callers asking for results which are already being evaluated
+ * wait for them, instead of running the same query again.
+ */
+class QueryResultCache(maxSize: Int = DEFAULT_MAX_SIZE) {
+    private data class Key(val query: Query, val sqlQuery: SupportSQLiteQuery)
+
+    private class Entry(val fingerprint: Any, val expiresAt: Long, val task: FutureTask<List<NoteView>>)
+
+    private val entries = LruCache<Key, Entry>(maxSize)
+
+    /**
+     * Results of the query, evaluated using [run] unless there are results
+     * for the same fingerprint (generations of books, for example) which did not expire.
+     */
+    fun getOrRun(
+            query: Query,
+            sqlQuery: SupportSQLiteQuery,
+            fingerprint: Any,
+            run: () -> List<NoteView>): List<NoteView> {
+
+        val key = Key(query, sqlQuery)
+
+        val now = DateTime.now()
+
+        var isNew = false
+
+        val entry = synchronized(entries) {
+            val cached = entries.get(key)
+
+            if (cached != null && cached.fingerprint == fingerprint && now.millis < cached.expiresAt) {
+                cached
+
+            } else {
+                isNew = true
+
+                Entry(fingerprint, expiresAt(query, now), FutureTask { run() }).also {
+                    entries.put(key, it)
+                }
+            }
+        }
+
+        if (isNew) {
+            entry.task.run()
+        }
+
+        return try {
+            entry.task.get()
+
+        } catch (e: ExecutionException) {
+            synchronized(entries) {
+                if (entries.get(key) === entry) {
+                    entries.remove(key)
+                }
+            }
+
+            throw e.cause ?: e
+        }
+    }
+
+    fun clear() {
+        synchronized(entries) {
+            entries.evictAll()
+        }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_SIZE = 16
+
+        /**
+         * Names of books the query is limited to, or null if notes from any book can match.
+         */
+        fun bookNames(condition: Condition?): Set<String>? {
+            return when (condition) {
+                is Condition.InBook ->
+                    if (condition.not) null else setOf(condition.name)
+
+                is Condition.And ->
+                    condition.operands.mapNotNull { bookNames(it) }.reduceOrNull { a, b -> a intersect b }
+
+                is Condition.Or ->
+                    condition.operands.map { bookNames(it) ?: return null }.reduce { a, b -> a union b }
+
+                else -> null
+            }
+        }
+
+        /**
+         * Time after which results of the query can change, even if no book changes.
+         * Relative times are resolved to the start of the day, unless they are in hours.
+         */
+        fun expiresAt(query: Query, now: DateTime): Long {
+            val intervals = intervals(query.condition)
+
+            return when {
+                intervals.any { it.now || it.unit == OrgInterval.Unit.HOUR } ->
+                    now.plusMinutes(1).withSecondOfMinute(0).withMillisOfSecond(0).millis
+
+                intervals.isNotEmpty() || query.isAgenda() ->
+                    now.plusDays(1).withTimeAtStartOfDay().millis
+
+                else ->
+                    Long.MAX_VALUE
+            }
+        }
+
+        private fun intervals(condition: Condition?): List<QueryInterval> {
+            return when (condition) {
+                is Condition.Scheduled -> listOf(condition.interval)
+                is Condition.Deadline -> listOf(condition.interval)
+                is Condition.Event -> listOf(condition.interval)
+                is Condition.Closed -> listOf(condition.interval)
+                is Condition.Created -> listOf(condition.interval)
+                is Condition.And -> condition.operands.flatMap { intervals(it) }
+                is Condition.Or -> condition.operands.flatMap { intervals(it) }
+                else -> emptyList()
+            }
+        }
+    }
+}
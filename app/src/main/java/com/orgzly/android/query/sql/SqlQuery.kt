@@ -1,7 +1,30 @@
 package com.orgzly.android.query.sql
 
+import com.orgzly.android.query.TimeUtils
+
 data class SqlQuery(
         val selection: String,
-        val selectionArgs: List<String>,
+        val arguments: List<Argument>,
         val having: String,
-        val orderBy: String)
\ No newline at end of file
+        val orderBy: String) {
+
+    /** Values of arguments at the time of the call. */
+    val selectionArgs: List<String>
+        get() = arguments.map { it.resolve().toString() }
+
+    sealed class Argument {
+        abstract fun resolve(): Any
+
+        data class Value(val value: String) : Argument() {
+            override fun resolve() = value
+        }
+
+        /**
+         * Time relative to now, resolved every time the query is executed,
+         * so that the same statement can be reused.
+         */
+        data class TimeFromNow(val field: Int, val amount: Int, val addOneMore: Boolean) : Argument() {
+            override fun resolve() = TimeUtils.timeFromNow(field, amount, addOneMore)
+        }
+    }
+}
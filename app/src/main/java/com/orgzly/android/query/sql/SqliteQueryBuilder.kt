@@ -10,7 +10,7 @@ import java.util.*
 
 class SqliteQueryBuilder(val context: Context) {
     private var where: String = ""
-    private val arguments: MutableList<String> = ArrayList()
+    private val arguments: MutableList<SqlQuery.Argument> = ArrayList()
 
     private var having: String = ""
 
@@ -171,6 +171,10 @@ class SqliteQueryBuilder(val context: Context) {
         return o.joinToString(", ")
     }
 
+    private fun addArgument(value: String) {
+        arguments.add(SqlQuery.Argument.Value(value))
+    }
+
     private fun joinConditions(members: List<Condition>, operator: String): String {
         return members.joinToString(prefix = "(", separator = " $operator ", postfix = ")") {
             toString(it)
@@ -182,12 +186,12 @@ class SqliteQueryBuilder(val context: Context) {
 
         return when (expr) {
             is Condition.InBook -> {
-                arguments.add(expr.name)
+                addArgument(expr.name)
                 not(expr.not, "book_name = ?")
             }
 
             is Condition.HasState -> {
-                arguments.add(expr.state.uppercase())
+                addArgument(expr.state.uppercase())
                 not(expr.not, "COALESCE(state, '') = ?")
             }
 
@@ -195,12 +199,12 @@ class SqliteQueryBuilder(val context: Context) {
                 when (expr.type) {
                     StateType.TODO -> {
                         val states = AppPreferences.todoKeywordsSet(context)
-                        arguments.addAll(states)
+                        states.forEach { addArgument(it) }
                         not(expr.not, "COALESCE(state, '') IN (" + Collections.nCopies(states.size, "?").joinToString() + ")")
                     }
                     StateType.DONE -> {
                         val states = AppPreferences.doneKeywordsSet(context)
-                        arguments.addAll(states)
+                        states.forEach { addArgument(it) }
                         not(expr.not, "COALESCE(state, '') IN (" + Collections.nCopies(states.size, "?").joinToString() + ")")
 
                     }
@@ -209,24 +213,24 @@ class SqliteQueryBuilder(val context: Context) {
             }
 
             is Condition.HasPriority -> {
-                arguments.add(AppPreferences.defaultPriority(context))
-                arguments.add(expr.priority)
+                addArgument(AppPreferences.defaultPriority(context))
+                addArgument(expr.priority)
                 not(expr.not, "LOWER(COALESCE(NULLIF(priority, ''), ?)) = ?")
             }
 
             is Condition.HasSetPriority -> {
-                arguments.add(expr.priority)
+                addArgument(expr.priority)
                 not(expr.not, "LOWER(COALESCE(priority, '')) = ?")
             }
 
             is Condition.HasTag -> {
-                repeat(2) { arguments.add("%${expr.tag}%") }
-                not(expr.not, "(COALESCE(tags, '') LIKE ? OR COALESCE(inherited_tags, '') LIKE ?)")
+                addArgument(expr.tag)
+                not(expr.not, "id IN (SELECT note_id FROM note_tags WHERE tag = ?)")
             }
 
             is Condition.HasOwnTag -> {
-                arguments.add("%${expr.tag}%")
-                not(expr.not, "(COALESCE(tags, '') LIKE ?)")
+                addArgument(expr.tag)
+                not(expr.not, "id IN (SELECT note_id FROM note_tags WHERE tag = ? AND inherited = 0)")
             }
 
             is Condition.Event -> {
@@ -253,8 +257,16 @@ class SqliteQueryBuilder(val context: Context) {
             }
 
             is Condition.HasText -> {
-                repeat(3) { arguments.add("%${expr.text}%") }
-                "(title LIKE ? OR content LIKE ? OR tags LIKE ?)"
+                val match = ftsMatch(expr.text, prefix = !expr.isQuoted)
+
+                if (match != null) {
+                    addArgument(match)
+                    "id IN (SELECT docid FROM notes_fts WHERE notes_fts MATCH ?)"
+
+                } else { // Nothing to look up in the index (only punctuation)
+                    repeat(3) { addArgument("%${expr.text}%") }
+                    "(title LIKE ? OR content LIKE ? OR tags LIKE ?)"
+                }
             }
 
             is Condition.Or -> joinConditions(expr.operands, "OR")
@@ -271,17 +283,37 @@ class SqliteQueryBuilder(val context: Context) {
 
         val (field, value) = getFieldAndValueFromInterval(interval)
 
-        val timeFromNow = TimeUtils.timeFromNow(field, value)
-        val timeFromNowPlusOne = TimeUtils.timeFromNow(field, value, true)
-
+        /* Bound when the query is executed. */
+        val timeFromNow = SqlQuery.Argument.TimeFromNow(field, value, false)
+        val timeFromNowPlusOne = SqlQuery.Argument.TimeFromNow(field, value, true)
 
         val cond = when (relation) {
-            Relation.EQ -> "$timeFromNow <= $column AND $column < $timeFromNowPlusOne"
-            Relation.NE -> "$column < $timeFromNow AND $timeFromNowPlusOne <= $column"
-            Relation.LT -> "$column < $timeFromNow"
-            Relation.LE -> "$column < $timeFromNowPlusOne"
-            Relation.GT -> "$timeFromNowPlusOne <= $column"
-            Relation.GE -> "$timeFromNow <= $column"
+            Relation.EQ -> {
+                arguments.add(timeFromNow)
+                arguments.add(timeFromNowPlusOne)
+                "? <= $column AND $column < ?"
+            }
+            Relation.NE -> {
+                arguments.add(timeFromNow)
+                arguments.add(timeFromNowPlusOne)
+                "$column < ? AND ? <= $column"
+            }
+            Relation.LT -> {
+                arguments.add(timeFromNow)
+                "$column < ?"
+            }
+            Relation.LE -> {
+                arguments.add(timeFromNowPlusOne)
+                "$column < ?"
+            }
+            Relation.GT -> {
+                arguments.add(timeFromNowPlusOne)
+                "? <= $column"
+            }
+            Relation.GE -> {
+                arguments.add(timeFromNow)
+                "? <= $column"
+            }
         }
 
         val activeOnly = if (isActiveColumn != null) {
@@ -318,4 +350,24 @@ class SqliteQueryBuilder(val context: Context) {
             Pair(unit, value)
         }
     }
+
+    companion object {
+        private val FTS_TOKEN_SEPARATOR = Regex("[^\\p{L}\\p{N}]+")
+
+        /**
+         * Full-text query matching [text] as a phrase. Unless quoted, the last word
+         * is matched as a prefix, to find notes while the text is still being typed.
+         *
+         * Returns null if there are no words in the text.
+         */
+        fun ftsMatch(text: String, prefix: Boolean): String? {
+            val tokens = text.split(FTS_TOKEN_SEPARATOR).filter { it.isNotEmpty() }
+
+            if (tokens.isEmpty()) {
+                return null
+            }
+
+            return tokens.joinToString(" ", "\"", if (prefix) "*\"" else "\"")
+        }
+    }
 }
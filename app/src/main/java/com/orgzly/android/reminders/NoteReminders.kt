@@ -2,15 +2,17 @@ package com.orgzly.android.reminders
 
 import android.content.Context
 import com.orgzly.android.data.DataRepository
+import com.orgzly.android.db.dao.ReminderScheduleDao
 import com.orgzly.android.db.dao.ReminderTimeDao
 import com.orgzly.android.db.dao.ReminderTimeDao.NoteTime
 import com.orgzly.android.prefs.AppPreferences
+import com.orgzly.android.prefs.AppPreferencesSnapshot
 import com.orgzly.org.datetime.OrgDateTime
 import com.orgzly.org.datetime.OrgDateTimeUtils
 import com.orgzly.org.datetime.OrgInterval
 import org.joda.time.DateTime
+import org.joda.time.Instant
 import org.joda.time.ReadableInstant
-import java.util.*
 
 
 object NoteReminders {
@@ -19,6 +21,9 @@ object NoteReminders {
     const val INTERVAL_FROM_LAST_TO_NOW = 1
     const val INTERVAL_FROM_NOW = 2
 
+    /**
+     * Reminders firing in the interval, older first.
+     */
     @JvmStatic
     fun getNoteReminders(
         context: Context,
@@ -27,79 +32,106 @@ object NoteReminders {
         lastRun: LastRun,
         intervalType: Int): List<NoteReminder> {
 
-        val result: MutableList<NoteReminder> = ArrayList()
+        dataRepository.refreshReminderSchedule(AppPreferences.reminderDailyTime(context))
 
-        for (noteTime in dataRepository.times()) {
-            if (isRelevantNoteTime(context, noteTime)) {
-                val orgDateTime = OrgDateTime.parse(noteTime.orgTimestampString)
+        val prefs = AppPreferencesSnapshot.get(context)
 
-                val interval = intervalToConsider(intervalType, now, lastRun, noteTime.timeType)
+        // Interval depends on the time type
+        return enabledTimeTypes(prefs).flatMap { timeType ->
+            val interval = intervalToConsider(intervalType, now, lastRun, timeType)
 
-                // Deadline warning period
+            dataRepository.getScheduledReminders(
+                interval.first.millis, interval.second?.millis, listOf(timeType), prefs.doneKeywords)
 
-                val warningPeriod = if (isWarningPeriodSupported(noteTime)) {
-                    if (orgDateTime.hasDelay()) {
-                        orgDateTime.delay as OrgInterval
-                    } else {
-                        // TODO: Use default from user preference
-                        // OrgInterval(1, OrgInterval.Unit.DAY)
-                        null
-                    }
-                } else {
-                    null
-                }
+        }.map(::toNoteReminder).sortedBy { it.runTime }
+    }
 
-                val time = getFirstTime(
-                    orgDateTime,
-                    interval,
-                    AppPreferences.reminderDailyTime(context),
-                    warningPeriod
-                )
-
-//                    if (BuildConfig.LOG_DEBUG) {
-//                        LogUtils.d(TAG,
-//                                "Note's time", noteTime,
-//                                "Interval", interval,
-//                                "Found first time", time)
-//                    }
-
-                if (time != null) {
-                    val payload = NoteReminderPayload(
-                        noteTime.noteId,
-                        noteTime.bookId,
-                        noteTime.bookName,
-                        noteTime.title,
-                        noteTime.timeType,
-                        orgDateTime)
-
-                    result.add(NoteReminder(time, payload))
-                }
+    /**
+     * First reminder firing after now.
+     */
+    fun getNextNoteReminder(
+        context: Context,
+        dataRepository: DataRepository,
+        now: ReadableInstant): NoteReminder? {
+
+        dataRepository.refreshReminderSchedule(AppPreferences.reminderDailyTime(context))
+
+        val prefs = AppPreferencesSnapshot.get(context)
+
+        val timeTypes = enabledTimeTypes(prefs)
+
+        if (timeTypes.isEmpty()) {
+            return null
+        }
+
+        return dataRepository.getScheduledReminders(
+            now.millis, null, timeTypes, prefs.doneKeywords, 1)
+            .firstOrNull()
+            ?.let(::toNoteReminder)
+    }
+
+    /**
+     * Time at which the reminder fires, or null if it never does.
+     */
+    fun getFireTime(timeType: Int, orgDateTime: OrgDateTime, defaultTimeOfDay: Int): DateTime? {
+        // Deadline warning period
+
+        val warningPeriod = if (isWarningPeriodSupported(timeType)) {
+            if (orgDateTime.hasDelay()) {
+                orgDateTime.delay as OrgInterval
+            } else {
+                // TODO: Use default from user preference
+                // OrgInterval(1, OrgInterval.Unit.DAY)
+                null
             }
+        } else {
+            null
         }
 
-        // Sort by time, older first
-        result.sortWith { o1, o2 -> o1.runTime.compareTo(o2.runTime) }
+        // Repeaters are not used, so the time does not depend on the interval
+        return getFirstTime(
+            orgDateTime,
+            Pair(Instant(0), null),
+            defaultTimeOfDay,
+            warningPeriod
+        )
+    }
+
+    private fun toNoteReminder(time: ReminderScheduleDao.ScheduledTime): NoteReminder {
+        val payload = NoteReminderPayload(
+            time.noteId,
+            time.bookId,
+            time.bookName,
+            time.title,
+            time.timeType,
+            OrgDateTime.parse(time.orgTimestampString))
+
+        return NoteReminder(DateTime(time.fireTime), payload)
+    }
 
-        return result
+    private fun enabledTimeTypes(prefs: AppPreferencesSnapshot): List<Int> {
+        return listOfNotNull(
+            ReminderTimeDao.SCHEDULED_TIME.takeIf { prefs.remindersForScheduledEnabled },
+            ReminderTimeDao.DEADLINE_TIME.takeIf { prefs.remindersForDeadlineEnabled },
+            ReminderTimeDao.EVENT_TIME.takeIf { prefs.remindersForEventsEnabled })
     }
 
-    fun isRelevantNoteTime(context: Context, noteTime: NoteTime): Boolean {
-        val doneStateKeywords = AppPreferences.doneKeywordsSet(context)
-        val isDone = doneStateKeywords.contains(noteTime.state)
+    fun isRelevantNoteTime(prefs: AppPreferencesSnapshot, noteTime: NoteTime): Boolean {
+        val isDone = prefs.isDone(noteTime.state)
 
-        val isEnabled = AppPreferences.remindersForScheduledEnabled(context)
+        val isEnabled = prefs.remindersForScheduledEnabled
                 && noteTime.timeType == ReminderTimeDao.SCHEDULED_TIME
-                || AppPreferences.remindersForDeadlineEnabled(context)
+                || prefs.remindersForDeadlineEnabled
                 && noteTime.timeType == ReminderTimeDao.DEADLINE_TIME
-                || AppPreferences.remindersForEventsEnabled(context)
+                || prefs.remindersForEventsEnabled
                 && noteTime.timeType == ReminderTimeDao.EVENT_TIME
 
         return isEnabled && !isDone
     }
 
-    private fun isWarningPeriodSupported(noteTime: NoteTime): Boolean {
-        return noteTime.timeType == ReminderTimeDao.DEADLINE_TIME
-                || noteTime.timeType == ReminderTimeDao.EVENT_TIME
+    private fun isWarningPeriodSupported(timeType: Int): Boolean {
+        return timeType == ReminderTimeDao.DEADLINE_TIME
+                || timeType == ReminderTimeDao.EVENT_TIME
     }
 
     private fun intervalToConsider(
@@ -9,6 +9,7 @@ import com.orgzly.android.AppIntent
 import com.orgzly.android.data.DataRepository
 import com.orgzly.android.data.logs.AppLogsRepository
 import com.orgzly.android.prefs.AppPreferences
+import com.orgzly.android.prefs.AppPreferencesSnapshot
 import com.orgzly.android.ui.util.userFriendlyPeriod
 import com.orgzly.android.util.LogMajorEvents
 import com.orgzly.android.util.LogUtils
@@ -48,7 +49,7 @@ class RemindersBroadcastReceiver : BroadcastReceiver() {
 
                     notifyForRemindersSinceLastRun(context, now, lastRun)
 
-                    scheduleNextReminder(context, now, lastRun)
+                    scheduleNextReminder(context, now)
                     LastRun.toPreferences(context, now)
                 }
 
@@ -144,14 +145,11 @@ class RemindersBroadcastReceiver : BroadcastReceiver() {
     /**
      * Schedule the next job for times after now.
      */
-    private fun scheduleNextReminder(context: Context, now: DateTime, lastRun: LastRun) {
-        val notes = NoteReminders.getNoteReminders(
-            context, dataRepository, now, lastRun, NoteReminders.INTERVAL_FROM_NOW)
-
-        if (notes.isNotEmpty()) {
-            // Schedule only the first upcoming time
-            val firstNote = notes.first()
+    private fun scheduleNextReminder(context: Context, now: DateTime) {
+        // Schedule only the first upcoming time
+        val firstNote = NoteReminders.getNextNoteReminder(context, dataRepository, now)
 
+        if (firstNote != null) {
             val id = firstNote.payload.noteId
             val title = firstNote.payload.title
             val runAt = firstNote.runTime.millis
@@ -167,7 +165,7 @@ class RemindersBroadcastReceiver : BroadcastReceiver() {
                 val inS = inMs.userFriendlyPeriod()
                 appLogs.log(
                     LogMajorEvents.REMINDERS,
-                    "Next: Found ${notes.size} notes from $now and scheduling first in $inS ($inMs ms): \"$title\" (id:$id)"
+                    "Next: Scheduling first from $now in $inS ($inMs ms): \"$title\" (id:$id)"
                 )
             }
 
@@ -187,10 +185,12 @@ class RemindersBroadcastReceiver : BroadcastReceiver() {
 
         val reminders = mutableListOf<NoteReminder>()
 
+        val prefs = AppPreferencesSnapshot.get(context)
+
         for (noteTime in dataRepository.times()) {
             if (noteTime.noteId == noteId
                 && noteTime.timeType == noteTimeType
-                && NoteReminders.isRelevantNoteTime(context, noteTime)) {
+                && NoteReminders.isRelevantNoteTime(prefs, noteTime)) {
 
                 val orgDateTime = OrgDateTime.parse(noteTime.orgTimestampString)
 
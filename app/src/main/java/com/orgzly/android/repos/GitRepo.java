@@ -35,7 +35,9 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class GitRepo implements SyncRepo, TwoWaySyncRepo {
     private final long repoId;
@@ -236,14 +238,26 @@ public class GitRepo implements SyncRepo, TwoWaySyncRepo {
     }
 
     private VersionedRook currentVersionedRook(Uri uri) throws IOException {
-        RevCommit commit = null;
+        return currentVersionedRook(uri, null);
+    }
+
+    /**
+     * @param commit latest commit of the file, if already known
+     */
+    private VersionedRook currentVersionedRook(Uri uri, RevCommit commit) throws IOException {
         if (uri.toString().contains("%")) {
             uri = Uri.parse(Uri.decode(uri.toString()));
         }
-        try {
-            commit = synchronizer.getLatestCommitOfFile(uri);
-        } catch (GitAPIException e) {
-            e.printStackTrace();
+        if (commit == null) {
+            String path = uri.toString().replaceFirst("^/", "");
+            commit = synchronizer.getLatestCommitsOfFiles(Collections.singleton(path)).get(path);
+        }
+        if (commit == null) {
+            try {
+                commit = synchronizer.getLatestCommitOfFile(uri);
+            } catch (GitAPIException e) {
+                e.printStackTrace();
+            }
         }
         long mtime = (long)commit.getCommitTime()*1000;
         return new VersionedRook(repoId, RepoType.GIT, getUri(), uri, commit.name(), mtime);
@@ -294,6 +308,7 @@ public class GitRepo implements SyncRepo, TwoWaySyncRepo {
                 return this;
             }
         });
+        List<String> filePaths = new ArrayList<>();
         while (walk.next()) {
             final FileMode mode = walk.getFileMode(0);
             final boolean isDirectory = mode == FileMode.TREE;
@@ -301,9 +316,14 @@ public class GitRepo implements SyncRepo, TwoWaySyncRepo {
             if (isDirectory)
                 continue;
             if (BookName.isSupportedFormatFileName(filePath))
-                result.add(
-                        currentVersionedRook(
-                                Uri.withAppendedPath(Uri.EMPTY, walk.getPathString())));
+                filePaths.add(filePath);
+        }
+        /* Latest commits of all books are found at once. */
+        Map<String, RevCommit> commits = synchronizer.getLatestCommitsOfFiles(filePaths);
+        for (String filePath : filePaths) {
+            result.add(
+                    currentVersionedRook(
+                            Uri.withAppendedPath(Uri.EMPTY, filePath), commits.get(filePath)));
         }
         return result;
     }
@@ -1,9 +1,11 @@
 package com.orgzly.android.repos
 
 import android.content.Context
+import android.net.Uri
 import com.orgzly.BuildConfig
 import com.orgzly.android.data.DbRepoBookRepository
 import com.orgzly.android.prefs.AppPreferences
+import com.orgzly.android.prefs.RepoPreferences
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -12,7 +14,70 @@ class RepoFactory @Inject constructor(
         private val context: Context,
         private val dbRepoBookRepository: DbRepoBookRepository
 ) {
+    private class Instance(val repoWithProps: RepoWithProps, val settings: Map<String, *>, val repo: SyncRepo)
+
+    /*
+     * Instances of repositories which are expensive to create (HTTP clients with their
+     * connection pools and authentication caches, opened Git repositories), by repo ID.
+     * Reused while the repository, its properties and settings are unchanged.
+     */
+    private val instances = HashMap<Long, Instance>()
+
     fun getInstance(repoWithProps: RepoWithProps): SyncRepo {
+        if (!isReusable(repoWithProps)) {
+            return createInstance(repoWithProps)
+        }
+
+        val id = repoWithProps.repo.id
+
+        val settings = settings(repoWithProps)
+
+        synchronized(instances) {
+            instances[id]?.let { instance ->
+                if (instance.repoWithProps == repoWithProps && instance.settings == settings) {
+                    return instance.repo
+                }
+            }
+        }
+
+        /* Created outside the lock, as opening a Git repository can take a while. */
+        return createInstance(repoWithProps).also { repo ->
+            synchronized(instances) {
+                instances[id] = Instance(repoWithProps, settings, repo)
+            }
+        }
+    }
+
+    /**
+     * Forgets the instance of the repository, after it was updated or deleted.
+     */
+    fun evict(id: Long) {
+        synchronized(instances) {
+            instances.remove(id)
+        }
+    }
+
+    private fun isReusable(repoWithProps: RepoWithProps): Boolean {
+        return repoWithProps.repo.id > 0 && when (repoWithProps.repo.type) {
+            RepoType.WEBDAV -> true
+            RepoType.GIT -> AppPreferences.gitIsEnabled(context)
+            else -> false
+        }
+    }
+
+    /* Git repositories are also configured using their own preferences. */
+    private fun settings(repoWithProps: RepoWithProps): Map<String, *> {
+        return if (repoWithProps.repo.type == RepoType.GIT) {
+            val repo = repoWithProps.repo
+
+            RepoPreferences(context, repo.id, Uri.parse(repo.url)).repoPreferences.all
+
+        } else {
+            emptyMap<String, Any>()
+        }
+    }
+
+    private fun createInstance(repoWithProps: RepoWithProps): SyncRepo {
         val type = repoWithProps.repo.type.id
 
         return when {
@@ -2,13 +2,17 @@ package com.orgzly.android.repos
 
 import java.lang.IllegalArgumentException
 
-enum class RepoType(val id: Int) {
-    MOCK(1),
-    DROPBOX(2),
-    DIRECTORY(3),
-    DOCUMENT(4),
-    WEBDAV(5),
-    GIT(6);
+/**
+ * @property maxConcurrentTransfers number of books listed, downloaded or uploaded
+ * at the same time while syncing, for all repositories of the type
+ */
+enum class RepoType(val id: Int, val maxConcurrentTransfers: Int) {
+    MOCK(1, 4),
+    DROPBOX(2, 4),
+    DIRECTORY(3, 4),
+    DOCUMENT(4, 2),
+    WEBDAV(5, 4),
+    GIT(6, 1);
 
     companion object {
         @JvmStatic
@@ -13,9 +13,13 @@ import com.orgzly.android.util.UriUtils
 import com.thegrizzlylabs.sardineandroid.DavResource
 import com.thegrizzlylabs.sardineandroid.impl.OkHttpSardine
 import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.asRequestBody
+import okhttp3.Response
 import okio.Buffer
 import java.io.File
 import java.io.FileOutputStream
+import java.io.IOException
 import java.io.InputStream
 import java.security.KeyStore
 import java.security.cert.CertificateFactory
@@ -36,10 +40,24 @@ class WebdavRepo(
         private val certificates: String? = null
 ) : SyncRepo {
 
+    private val client by lazy {
+        okHttpClient()
+    }
+
     private val sardine by lazy {
-        OkHttpSardine(okHttpClient())
+        OkHttpSardine(client)
     }
 
+    /*
+     * ETags of files in the collection (or an empty string, if the server has none),
+     * as last listed, downloaded or uploaded. Instances are reused across syncs.
+     */
+    private val etags = ConcurrentHashMap<String, String>()
+
+    /* Collection exists and [etags] has all of its files. */
+    @Volatile
+    private var isListed = false
+
     private fun okHttpClient(): OkHttpClient {
         val builder = OkHttpClient.Builder()
 
@@ -124,6 +142,28 @@ class WebdavRepo(
         const val PASSWORD_PREF_KEY = "password"
         const val CERTIFICATES_PREF_KEY = "certificates"
 
+        private const val HTTP_PRECONDITION_FAILED = 412
+
+        /**
+         * Revisions used to be file name with modification time, before ETags.
+         * Those are considered unchanged if the modification time is the same.
+         */
+        @JvmStatic
+        fun isSameRevision(synced: VersionedRook, latest: VersionedRook): Boolean {
+            if (synced.revision == latest.revision) {
+                return true
+            }
+
+            val legacyRevision = synced.uri.lastPathSegment + synced.mtime.toString()
+
+            return synced.revision == legacyRevision && synced.mtime == latest.mtime
+        }
+
+        /* Quotes are removed, as servers are not consistent about them in properties. */
+        private fun normalizeEtag(etag: String?): String? {
+            return etag?.replace("\"", "")?.ifEmpty { null }
+        }
+
         fun getInstance(repoWithProps: RepoWithProps): WebdavRepo {
             val id = repoWithProps.repo.id
 
@@ -158,12 +198,21 @@ class WebdavRepo(
     override fun getBooks(): MutableList<VersionedRook> {
         val url = uri.toUrl()
 
-        if (!sardine.exists(url)) {
+        /* Listing fails if the collection doesn't exist, which is only checked then. */
+        val resources = try {
+            sardine.list(url)
+
+        } catch (e: IOException) {
+            if (isListed || sardine.exists(url)) {
+                throw e
+            }
+
             sardine.createDirectory(url)
+
+            emptyList<DavResource>()
         }
 
-        return sardine
-                .list(url)
+        val books = resources
                 .mapNotNull {
                     if (it.isDirectory || !BookName.isSupportedFormatFileName(it.name)) {
                         null
@@ -172,45 +221,130 @@ class WebdavRepo(
                     }
                 }
                 .toMutableList()
+
+        etags.clear()
+        resources.filter { !it.isDirectory }.forEach {
+            etags[Uri.withAppendedPath(uri, it.name).toUrl()] = normalizeEtag(it.etag).orEmpty()
+        }
+        isListed = true
+
+        return books
     }
 
     override fun retrieveBook(fileName: String?, destination: File?): VersionedRook {
         val fileUrl = Uri.withAppendedPath(uri, fileName).toUrl()
 
-        sardine.get(fileUrl).use { inputStream ->
-            FileOutputStream(destination).use { outputStream ->
-                inputStream.copyTo(outputStream)
+        /* Compressed responses can have different ETags (Apache appends -gzip). */
+        val request = Request.Builder()
+                .url(fileUrl)
+                .header("Accept-Encoding", "identity")
+                .build()
+
+        client.newCall(request).execute().use { response ->
+            if (!response.isSuccessful) {
+                throw IOException("Failed downloading $fileName: ${response.code} ${response.message}")
+            }
+
+            response.body!!.byteStream().use { inputStream ->
+                FileOutputStream(destination).use { outputStream ->
+                    inputStream.copyTo(outputStream)
+                }
             }
-        }
 
-        return sardine.list(fileUrl).first().toVersionedRook()
+            return responseToVersionedRook(fileName, fileUrl, response)
+        }
     }
 
+    /**
+     * Uploads only if the file on the server is the one last seen by this instance,
+     * or if it doesn't exist, when it wasn't listed.
+     */
     override fun storeBook(file: File?, fileName: String?): VersionedRook {
+        return storeBook(file, fileName, true)
+    }
+
+    /**
+     * Uploads the file. Unless [conditional], the file on the server is overwritten
+     * even if it changed since it was last seen (when book is force-saved).
+     */
+    fun storeBook(file: File?, fileName: String?, conditional: Boolean): VersionedRook {
         val fileUrl = Uri.withAppendedPath(uri, fileName).toUrl()
 
-        sardine.put(fileUrl, file, null)
+        val builder = Request.Builder()
+                .url(fileUrl)
+                .put(file!!.asRequestBody())
+
+        if (conditional) {
+            val etag = etags[fileUrl]
+
+            if (etag != null && etag.isNotEmpty() && !etag.startsWith("W/")) {
+                builder.header("If-Match", "\"$etag\"")
+
+            } else if (etag == null && isListed) {
+                builder.header("If-None-Match", "*")
+            }
+        }
+
+        client.newCall(builder.build()).execute().use { response ->
+            if (response.code == HTTP_PRECONDITION_FAILED) {
+                /* Forgotten until the files are listed again. */
+                etags.remove(fileUrl)
+                isListed = false
+                throw IOException("File $fileName was changed on the server")
+            }
+
+            if (!response.isSuccessful) {
+                throw IOException("Failed uploading $fileName: ${response.code} ${response.message}")
+            }
+
+            return responseToVersionedRook(fileName, fileUrl, response)
+        }
+    }
+
+    /* Takes ETag and modification time from the response, or asks for them if missing. */
+    private fun responseToVersionedRook(fileName: String?, fileUrl: String, response: Response): VersionedRook {
+        val etag = normalizeEtag(response.header("ETag"))
+        val mtime = response.headers.getDate("Last-Modified")?.time
+
+        if (etag != null && mtime != null) {
+            etags[fileUrl] = etag
+
+            return VersionedRook(repoId, RepoType.WEBDAV, uri, Uri.withAppendedPath(uri, fileName), etag, mtime)
+        }
 
-        return sardine.list(fileUrl).first().toVersionedRook()
+        val resource = sardine.list(fileUrl).first()
+
+        etags[fileUrl] = normalizeEtag(resource.etag).orEmpty()
+
+        return resource.toVersionedRook()
     }
 
     override fun renameBook(from: Uri, name: String?): VersionedRook {
         val destUrl = UriUtils.getUriForNewName(from, name).toUrl()
         sardine.move(from.toUrl(), destUrl)
-        return sardine.list(destUrl).first().toVersionedRook()
+
+        val resource = sardine.list(destUrl).first()
+
+        etags.remove(from.toUrl())
+        etags[destUrl] = normalizeEtag(resource.etag).orEmpty()
+
+        return resource.toVersionedRook()
     }
 
     override fun delete(uri: Uri) {
         sardine.delete(uri.toUrl())
+
+        etags.remove(uri.toUrl())
     }
 
+    /* Revision is the ETag, or file name with modification time, if the server has no ETags. */
     private fun DavResource.toVersionedRook(): VersionedRook {
         return VersionedRook(
                 repoId,
                 RepoType.WEBDAV,
                 uri,
                 Uri.withAppendedPath(uri, this.name),
-                this.name + this.modified.time.toString(),
+                normalizeEtag(this.etag) ?: (this.name + this.modified.time.toString()),
                 this.modified.time
         )
     }
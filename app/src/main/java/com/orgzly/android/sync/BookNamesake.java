@@ -5,7 +5,9 @@ import android.content.Context;
 import com.orgzly.android.BookName;
 import com.orgzly.android.db.entity.BookView;
 import com.orgzly.android.db.entity.Repo;
+import com.orgzly.android.repos.RepoType;
 import com.orgzly.android.repos.VersionedRook;
+import com.orgzly.android.repos.WebdavRepo;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -33,6 +35,14 @@ public class BookNamesake {
         this.name = name;
     }
 
+    private static boolean isSameRevision(VersionedRook synced, VersionedRook latest) {
+        if (latest.getRepoType() == RepoType.WEBDAV) {
+            return WebdavRepo.isSameRevision(synced, latest);
+        }
+
+        return synced.getRevision().equals(latest.getRevision());
+    }
+
     /**
      * Create links between each local book and each remote book with the same name.
      */
@@ -189,7 +199,7 @@ public class BookNamesake {
             }
 
             /* Same revision, there was no remote change. */
-            if (book.getSyncedTo().getRevision().equals(latestLinkedRook.getRevision())) {
+            if (isSameRevision(book.getSyncedTo(), latestLinkedRook)) {
                 /* Revision did not change. */
 
                 if (book.isOutOfSync()) { // Local change
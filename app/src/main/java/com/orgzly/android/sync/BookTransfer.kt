@@ -0,0 +1,37 @@
+package com.orgzly.android.sync
+
+import com.orgzly.android.data.DataRepository
+import com.orgzly.android.data.ParsedBook
+import com.orgzly.android.data.UploadedBook
+import com.orgzly.android.db.entity.BookView
+import com.orgzly.android.db.entity.Repo
+import com.orgzly.android.repos.RepoType
+import com.orgzly.android.repos.VersionedRook
+import java.io.IOException
+
+/**
+ * Download or upload which [SyncUtils.syncNamesake] is going to do.
+ * It can run ahead, concurrently with other transfers, as it doesn't change the database.
+ */
+sealed class BookTransfer(val repoType: RepoType) {
+    class Load(val rook: VersionedRook) : BookTransfer(rook.repoType)
+
+    class Save(val repo: Repo, val fileName: String, val bookView: BookView) : BookTransfer(repo.type)
+
+    @Throws(IOException::class)
+    fun run(dataRepository: DataRepository): TransferredBook {
+        return when (this) {
+            is Load -> TransferredBook.Loaded(dataRepository.parseBookFromRepo(rook))
+            is Save -> TransferredBook.Saved(dataRepository.uploadBookToRepo(repo, fileName, bookView))
+        }
+    }
+}
+
+/**
+ * Result of [BookTransfer], which is then written to the database by [SyncUtils.syncNamesake].
+ */
+sealed class TransferredBook {
+    class Loaded(val book: ParsedBook) : TransferredBook()
+
+    class Saved(val book: UploadedBook) : TransferredBook()
+}
@@ -8,34 +8,44 @@ import com.orgzly.android.BookName
 import com.orgzly.android.NotesOrgExporter
 import com.orgzly.android.data.DataRepository
 import com.orgzly.android.db.entity.BookAction
-import com.orgzly.android.db.entity.Repo
+import com.orgzly.android.repos.RepoType
 import com.orgzly.android.repos.SyncRepo
 import com.orgzly.android.repos.TwoWaySyncRepo
 import com.orgzly.android.repos.VersionedRook
 import com.orgzly.android.util.LogUtils
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
 import java.io.IOException
 
 object SyncUtils {
     private val TAG: String = SyncUtils::class.java.name
 
     /**
-     * Goes through each repository and collects all books from each one.
+     * Collects all books from each repository.
+     * Repositories are listed at the same time, up to the limit for their type.
      */
     @Throws(IOException::class)
     @JvmStatic
     fun getBooksFromAllRepos(dataRepository: DataRepository, repos: List<SyncRepo>? = null): List<VersionedRook> {
-        val result = ArrayList<VersionedRook>()
-
         val repoList = repos ?: dataRepository.getSyncRepos()
 
-        for (repo in repoList) {
-            val libBooks = repo.books
-
-            /* Each book in repository. */
-            result.addAll(libBooks)
+        if (repoList.size <= 1) {
+            return repoList.flatMap { it.books }
         }
 
-        return result
+        val limits = TransferLimits()
+
+        return runBlocking(Dispatchers.IO) {
+            repoList.map { repo ->
+                async {
+                    limits.withPermit(TransferLimits.repoType(repo)) {
+                        repo.books
+                    }
+                }
+            }.awaitAll().flatten()
+        }
     }
 
     /**
@@ -71,16 +81,73 @@ object SyncUtils {
     }
 
     /**
-     * Passed [com.orgzly.android.sync.BookNamesake] is NOT updated after load or save.
+     * Download or upload which [syncNamesake] is going to do, if any.
+     * Books synced with two-way repositories are not included.
+     */
+    @JvmStatic
+    fun transferToRun(dataRepository: DataRepository, namesake: BookNamesake): BookTransfer? {
+        if (namesake.rooks.isNotEmpty() && namesake.rooks[0].repoType == RepoType.GIT) {
+            return null
+        }
+
+        return when (namesake.status) {
+            BookSyncStatus.NO_BOOK_ONE_ROOK,
+            BookSyncStatus.DUMMY_WITHOUT_LINK_AND_ONE_ROOK ->
+                BookTransfer.Load(namesake.rooks[0])
+
+            BookSyncStatus.DUMMY_WITH_LINK,
+            BookSyncStatus.BOOK_WITH_LINK_AND_ROOK_MODIFIED ->
+                BookTransfer.Load(namesake.latestLinkedRook)
+
+            BookSyncStatus.ONLY_BOOK_WITHOUT_LINK_AND_ONE_REPO,
+            BookSyncStatus.BOOK_WITH_LINK_LOCAL_MODIFIED,
+            BookSyncStatus.ONLY_BOOK_WITH_LINK ->
+                bookToSave(dataRepository, namesake).takeIf { it.repo.type != RepoType.GIT }
+
+            else -> null
+        }
+    }
+
+    /**
+     * Repository and file name the local book is saved to.
      *
      * FIXME: Hardcoded BookName.Format.ORG below
      */
+    private fun bookToSave(dataRepository: DataRepository, namesake: BookNamesake): BookTransfer.Save {
+        return when (namesake.status) {
+            BookSyncStatus.ONLY_BOOK_WITHOUT_LINK_AND_ONE_REPO ->
+                BookTransfer.Save(
+                    dataRepository.getRepos().iterator().next(),
+                    BookName.fileName(namesake.book.book.name, BookFormat.ORG),
+                    namesake.book)
+
+            BookSyncStatus.BOOK_WITH_LINK_LOCAL_MODIFIED ->
+                BookTransfer.Save(
+                    namesake.book.linkRepo!!,
+                    BookName.getFileName(App.getAppContext(), namesake.book.syncedTo!!.uri),
+                    namesake.book)
+
+            BookSyncStatus.ONLY_BOOK_WITH_LINK ->
+                BookTransfer.Save(
+                    namesake.book.linkRepo!!,
+                    BookName.fileName(namesake.book.book.name, BookFormat.ORG),
+                    namesake.book)
+
+            else ->
+                throw IllegalStateException("Book is not saved for status ${namesake.status}")
+        }
+    }
+
+    /**
+     * Passed [com.orgzly.android.sync.BookNamesake] is NOT updated after load or save.
+     *
+     * If the book has already been downloaded or uploaded ([transferToRun]),
+     * the result is passed as [transferred] and only written to the database.
+     */
     @Throws(Exception::class)
     @JvmStatic
-    fun syncNamesake(dataRepository: DataRepository, namesake: BookNamesake): BookAction {
-        val repoEntity: Repo?
-        val repoUrl: String
-        val fileName: String
+    @JvmOverloads
+    fun syncNamesake(dataRepository: DataRepository, namesake: BookNamesake, transferred: TransferredBook? = null): BookAction {
         var bookAction: BookAction? = null
 
         // FIXME: This is a pretty nasty hack that completely circumvents the existing code path
@@ -120,14 +187,14 @@ object SyncUtils {
             /* Load remote book. */
 
             BookSyncStatus.NO_BOOK_ONE_ROOK, BookSyncStatus.DUMMY_WITHOUT_LINK_AND_ONE_ROOK -> {
-                dataRepository.loadBookFromRepo(namesake.rooks[0])
+                loadBookFromRepo(dataRepository, namesake.rooks[0], transferred)
                 bookAction = BookAction.forNow(
                     BookAction.Type.INFO,
                     namesake.status.msg(namesake.rooks[0].uri))
             }
 
             BookSyncStatus.DUMMY_WITH_LINK, BookSyncStatus.BOOK_WITH_LINK_AND_ROOK_MODIFIED -> {
-                dataRepository.loadBookFromRepo(namesake.latestLinkedRook)
+                loadBookFromRepo(dataRepository, namesake.latestLinkedRook, transferred)
                 bookAction = BookAction.forNow(
                     BookAction.Type.INFO,
                     namesake.status.msg(namesake.latestLinkedRook.uri))
@@ -135,28 +202,14 @@ object SyncUtils {
 
             /* Save local book to repository. */
 
-            BookSyncStatus.ONLY_BOOK_WITHOUT_LINK_AND_ONE_REPO -> {
-                repoEntity = dataRepository.getRepos().iterator().next()
-                repoUrl = repoEntity.url
-                fileName = BookName.fileName(namesake.book.book.name, BookFormat.ORG)
-                dataRepository.saveBookToRepo(repoEntity, fileName, namesake.book, BookFormat.ORG)
-                bookAction = BookAction.forNow(BookAction.Type.INFO, namesake.status.msg(repoUrl))
-            }
-
-            BookSyncStatus.BOOK_WITH_LINK_LOCAL_MODIFIED -> {
-                repoEntity = namesake.book.linkRepo
-                repoUrl = repoEntity!!.url
-                fileName = BookName.getFileName(App.getAppContext(), namesake.book.syncedTo!!.uri)
-                dataRepository.saveBookToRepo(repoEntity, fileName, namesake.book, BookFormat.ORG)
-                bookAction = BookAction.forNow(BookAction.Type.INFO, namesake.status.msg(repoUrl))
-            }
-
+            BookSyncStatus.ONLY_BOOK_WITHOUT_LINK_AND_ONE_REPO,
+            BookSyncStatus.BOOK_WITH_LINK_LOCAL_MODIFIED,
             BookSyncStatus.ONLY_BOOK_WITH_LINK -> {
-                repoEntity = namesake.book.linkRepo
-                repoUrl = repoEntity!!.url
-                fileName = BookName.fileName(namesake.book.book.name, BookFormat.ORG)
-                dataRepository.saveBookToRepo(repoEntity, fileName, namesake.book, BookFormat.ORG)
-                bookAction = BookAction.forNow(BookAction.Type.INFO, namesake.status.msg(repoUrl))
+                val save = bookToSave(dataRepository, namesake)
+                val uploadedBook = (transferred as? TransferredBook.Saved)?.book
+                    ?: dataRepository.uploadBookToRepo(save.repo, save.fileName, save.bookView)
+                dataRepository.storeUploadedBook(uploadedBook)
+                bookAction = BookAction.forNow(BookAction.Type.INFO, namesake.status.msg(save.repo.url))
             }
         }
 
@@ -165,6 +218,15 @@ object SyncUtils {
         return bookAction
     }
 
+    @Throws(IOException::class)
+    private fun loadBookFromRepo(dataRepository: DataRepository, rook: VersionedRook, transferred: TransferredBook?) {
+        if (transferred is TransferredBook.Loaded) {
+            dataRepository.storeParsedBook(transferred.book)
+        } else {
+            dataRepository.loadBookFromRepo(rook)
+        }
+    }
+
     @Throws(IOException::class)
     private fun handleTwoWaySync(dataRepository: DataRepository, repo: TwoWaySyncRepo, namesake: BookNamesake): Boolean {
         val (book, _, _, currentRook) = namesake.book
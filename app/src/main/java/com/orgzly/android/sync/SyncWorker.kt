@@ -18,7 +18,11 @@ import com.orgzly.android.ui.util.haveNetworkConnection
 import com.orgzly.android.util.AppPermissions
 import com.orgzly.android.util.LogUtils
 import com.orgzly.android.widgets.ListWidgetProvider
+import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.isActive
 import kotlinx.coroutines.withContext
 import java.util.concurrent.CancellationException
 import javax.inject.Inject
@@ -208,33 +212,73 @@ class SyncWorker(val context: Context, val params: WorkerParameters) :
 
         /*
          * Start syncing name by name.
+         *
+         * Books are downloaded (and parsed) or uploaded ahead, a few at a time,
+         * up to the limit for each repository type. Database is still only
+         * updated here, one book at a time, in the order of namesakes.
          */
-        for ((curr, namesake) in orderedNamesakes.values.withIndex()) {
-            /* If task has been canceled, just mark the remaining books as such. */
-            if (isStopped) {
-                dataRepository.setBookLastActionAndSyncStatus(
-                    namesake.book.book.id,
-                    BookAction.forNow(BookAction.Type.INFO, context.getString(R.string.canceled)))
+        val namesakesToSync = orderedNamesakes.values.toList()
+
+        val transfers = arrayOfNulls<Deferred<kotlin.Result<TransferredBook>>>(namesakesToSync.size)
+
+        val limits = TransferLimits()
+
+        coroutineScope {
+            fun transferAhead(from: Int) {
+                for (i in from until minOf(from + TRANSFER_AHEAD, namesakesToSync.size)) {
+                    if (transfers[i] == null) {
+                        SyncUtils.transferToRun(dataRepository, namesakesToSync[i])?.let { transfer ->
+                            transfers[i] = async(Dispatchers.IO) {
+                                limits.withPermit(transfer.repoType) {
+                                    runCatching { transfer.run(dataRepository) }.onSuccess {
+                                        /* Uploads can't be stopped, link the book even if sync was canceled meanwhile. */
+                                        if (!isActive && it is TransferredBook.Saved) {
+                                            dataRepository.storeUploadedBook(it.book)
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
 
-            } else {
-                sendProgress(SyncState.getInstance(
-                    SyncState.Type.BOOK_STARTED, namesake.name, curr, namesakes.size))
+            for ((curr, namesake) in namesakesToSync.withIndex()) {
+                /* If task has been canceled, just mark the remaining books as such. */
+                if (isStopped) {
+                    transfers[curr]?.cancel()
 
-                try {
-                    val action = SyncUtils.syncNamesake(dataRepository, namesake)
-                    dataRepository.setBookLastActionAndSyncStatus(
-                        namesake.book.book.id,
-                        action,
-                        namesake.status.toString())
-                } catch (e: Exception) {
-                    e.printStackTrace()
                     dataRepository.setBookLastActionAndSyncStatus(
                         namesake.book.book.id,
-                        BookAction.forNow(BookAction.Type.ERROR, e.message.orEmpty()))
+                        BookAction.forNow(BookAction.Type.INFO, context.getString(R.string.canceled)))
+
+                } else {
+                    transferAhead(curr)
+
+                    sendProgress(SyncState.getInstance(
+                        SyncState.Type.BOOK_STARTED, namesake.name, curr, namesakes.size))
+
+                    try {
+                        val transferred = transfers[curr]?.await()?.getOrThrow()
+
+                        val action = SyncUtils.syncNamesake(dataRepository, namesake, transferred)
+                        dataRepository.setBookLastActionAndSyncStatus(
+                            namesake.book.book.id,
+                            action,
+                            namesake.status.toString())
+                    } catch (e: Exception) {
+                        e.printStackTrace()
+                        dataRepository.setBookLastActionAndSyncStatus(
+                            namesake.book.book.id,
+                            BookAction.forNow(BookAction.Type.ERROR, e.message.orEmpty()))
+                    } finally {
+                        /* Release transferred book. */
+                        transfers[curr] = null
+                    }
+
+                    sendProgress(SyncState.getInstance(
+                        SyncState.Type.BOOK_ENDED, namesake.name, curr + 1, namesakes.size))
                 }
-
-                sendProgress(SyncState.getInstance(
-                    SyncState.Type.BOOK_ENDED, namesake.name, curr + 1, namesakes.size))
             }
         }
 
@@ -274,5 +318,11 @@ class SyncWorker(val context: Context, val params: WorkerParameters) :
 
     companion object {
         private val TAG: String = SyncWorker::class.java.name
+
+        /*
+         * Number of books transferred ahead. Parsed books are kept in memory
+         * until they are written, so there is a limit for all repositories too.
+         */
+        private val TRANSFER_AHEAD = Runtime.getRuntime().availableProcessors().coerceAtLeast(4)
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.orgzly.android.sync
+
+import com.orgzly.android.repos.*
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+
+/**
+ * Limits the number of remote operations (listing, downloads and uploads)
+ * running at the same time, separately for each repository type.
+ */
+class TransferLimits(limit: (RepoType) -> Int = { it.maxConcurrentTransfers }) {
+    private val semaphores = RepoType.values().associateWith { Semaphore(limit(it)) }
+
+    /* For repositories of unknown type. */
+    private val fallback = Semaphore(1)
+
+    suspend fun <T> withPermit(repoType: RepoType?, action: suspend () -> T): T {
+        val semaphore = repoType?.let { semaphores.getValue(it) } ?: fallback
+
+        return semaphore.withPermit { action() }
+    }
+
+    companion object {
+        @JvmStatic
+        fun repoType(repo: SyncRepo): RepoType? {
+            return when (repo) {
+                is MockRepo, is DatabaseRepo -> RepoType.MOCK
+                is DropboxRepo -> RepoType.DROPBOX
+                is DirectoryRepo -> RepoType.DIRECTORY
+                is ContentRepo -> RepoType.DOCUMENT
+                is WebdavRepo -> RepoType.WEBDAV
+                is GitRepo -> RepoType.GIT
+                else -> null
+            }
+        }
+    }
+}
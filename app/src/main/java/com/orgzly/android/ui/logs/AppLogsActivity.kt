@@ -39,6 +39,7 @@ class AppLogsActivity : CommonActivity() {
 
         binding.info.setTextIsSelectable(true)
         binding.logs.setTextIsSelectable(true)
+        binding.queries.setTextIsSelectable(true)
 
 
         val factory = AppLogsViewModelFactory.getInstance(appLogs)
@@ -76,10 +77,11 @@ class AppLogsActivity : CommonActivity() {
 
     private fun updateInfoWithFreshData() {
         binding.info.text = getInfo()
+        binding.queries.text = viewModel.queryProfiles().joinToString("\n")
     }
 
     private fun allText(): CharSequence {
-        return binding.info.text.toString() + "\n" + binding.logs.text.toString()
+        return binding.info.text.toString() + "\n" + binding.logs.text.toString() + "\n" + binding.queries.text.toString()
     }
 
     private fun getInfo(): CharSequence {
@@ -6,7 +6,7 @@ import com.orgzly.android.util.LogMajorEvents
 import kotlinx.coroutines.flow.map
 import java.util.*
 
-class AppLogsViewModel(appLogsRepository: AppLogsRepository) : CommonViewModel() {
+class AppLogsViewModel(private val appLogsRepository: AppLogsRepository) : CommonViewModel() {
     val logs = appLogsRepository.getFlow(LogMajorEvents.REMINDERS).map {
         it.map { logEntry ->
             val date = Date(logEntry.time)
@@ -16,4 +16,18 @@ class AppLogsViewModel(appLogsRepository: AppLogsRepository) : CommonViewModel()
             "$date $type $message"
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Profiled database statements, slowest first. Empty unless profiling is enabled.
+     */
+    fun queryProfiles(): List<String> {
+        return appLogsRepository.getQueryProfiles().map { profile ->
+            val max = profile.maxTime / 1_000_000.0
+            val avg = profile.totalTime / profile.executions / 1_000_000.0
+
+            String.format(Locale.US,
+                    "max %.2f ms, avg %.2f ms, %d executions, %d rows\n%s\n%s\n",
+                    max, avg, profile.executions, profile.rows, profile.sql.trimIndent().trim(), profile.plan)
+        }
+    }
+}
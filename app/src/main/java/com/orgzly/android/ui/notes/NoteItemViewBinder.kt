@@ -12,6 +12,7 @@ import com.orgzly.android.App
 import com.orgzly.android.db.entity.Note
 import com.orgzly.android.db.entity.NoteView
 import com.orgzly.android.prefs.AppPreferences
+import com.orgzly.android.prefs.AppPreferencesSnapshot
 import com.orgzly.android.ui.TimeType
 import com.orgzly.android.ui.util.TitleGenerator
 import com.orgzly.android.ui.util.styledAttributes
@@ -22,6 +23,7 @@ import com.orgzly.android.usecase.UseCaseRunner
 import com.orgzly.android.util.UserTimeFormatter
 import com.orgzly.databinding.ItemAgendaDividerBinding
 import com.orgzly.databinding.ItemHeadBinding
+import com.orgzly.org.datetime.OrgRange
 
 class NoteItemViewBinder(private val context: Context, private val inBook: Boolean) {
     private val attrs: Attrs = Attrs.obtain(context)
@@ -44,24 +46,26 @@ class NoteItemViewBinder(private val context: Context, private val inBook: Boole
     }
 
     fun bind(holder: NoteItemViewHolder, noteView: NoteView, agendaTimeType: TimeType? = null) {
+        val prefs = AppPreferencesSnapshot.get(context)
+
         setupTitle(holder, noteView)
-        setupBookName(holder, noteView)
-        setupPlanningTimes(holder, noteView, agendaTimeType)
-        setupContent(holder, noteView.note)
+        setupBookName(holder, noteView, prefs)
+        setupPlanningTimes(holder, noteView, agendaTimeType, prefs)
+        setupContent(holder, noteView.note, prefs)
         setupIndent(holder, noteView.note)
         setupBullet(holder, noteView.note)
-        setupFoldingButtons(holder, noteView.note)
-        setupAlpha(holder, noteView)
+        setupFoldingButtons(holder, noteView.note, prefs)
+        setupAlpha(holder, noteView, prefs)
     }
 
-    private fun setupBookName(holder: NoteItemViewHolder, noteView: NoteView) {
+    private fun setupBookName(holder: NoteItemViewHolder, noteView: NoteView, prefs: AppPreferencesSnapshot) {
         if (inBook) {
             holder.binding.itemHeadBookNameIcon.visibility = View.GONE
             holder.binding.itemHeadBookNameText.visibility = View.GONE
             holder.binding.itemHeadBookNameBeforeNoteText.visibility = View.GONE
 
         } else {
-            when (Integer.valueOf(AppPreferences.bookNameInSearchResults(context))) {
+            when (prefs.bookNameInSearchResults) {
                 0 -> { // Hide
                     holder.binding.itemHeadBookNameIcon.visibility = View.GONE
                     holder.binding.itemHeadBookNameText.visibility = View.GONE
@@ -96,9 +100,9 @@ class NoteItemViewBinder(private val context: Context, private val inBook: Boole
         return titleGenerator.generateTitle(noteView)
     }
 
-    private fun setupContent(holder: NoteItemViewHolder, note: Note) {
+    private fun setupContent(holder: NoteItemViewHolder, note: Note, prefs: AppPreferencesSnapshot) {
         if (note.hasContent() && titleGenerator.shouldDisplayContent(note)) {
-            if (AppPreferences.isFontMonospaced(context)) {
+            if (prefs.isFontMonospaced) {
                 holder.binding.itemHeadContent.setTypeface(Typeface.MONOSPACE)
             }
 
@@ -120,11 +124,11 @@ class NoteItemViewBinder(private val context: Context, private val inBook: Boole
         }
     }
 
-    private fun setupPlanningTimes(holder: NoteItemViewHolder, noteView: NoteView, agendaTimeType: TimeType?) {
+    private fun setupPlanningTimes(
+            holder: NoteItemViewHolder, noteView: NoteView, agendaTimeType: TimeType?, prefs: AppPreferencesSnapshot) {
 
-        fun setupPlanningTime(textView: TextView, iconView: ImageView, value: String?) {
-            if (value != null && AppPreferences.displayPlanning(context)) {
-                val range = com.orgzly.org.datetime.OrgRange.parse(value)
+        fun setupPlanningTime(textView: TextView, iconView: ImageView, range: OrgRange?) {
+            if (range != null && prefs.displayPlanning) {
                 textView.text = userTimeFormatter.formatAll(range)
                 textView.visibility = View.VISIBLE
                 iconView.visibility = View.VISIBLE
@@ -135,9 +139,9 @@ class NoteItemViewBinder(private val context: Context, private val inBook: Boole
             }
         }
 
-        var scheduled = noteView.scheduledRangeString
-        var deadline = noteView.deadlineRangeString
-        var event = noteView.eventString
+        var scheduled = noteView.scheduledRange
+        var deadline = noteView.deadlineRange
+        var event = noteView.eventRange
 
         // In Agenda only display time responsible for item's presence
         when (agendaTimeType) {
@@ -175,16 +179,16 @@ class NoteItemViewBinder(private val context: Context, private val inBook: Boole
         setupPlanningTime(
                 holder.binding.itemHeadClosedText,
                 holder.binding.itemHeadClosedIcon,
-                noteView.closedRangeString)
+                noteView.closedRange)
     }
 
     /** Set alpha for done and archived items. */
-    private fun setupAlpha(holder: NoteItemViewHolder, noteView: NoteView) {
+    private fun setupAlpha(holder: NoteItemViewHolder, noteView: NoteView, prefs: AppPreferencesSnapshot) {
         val state = noteView.note.state
         val tags = noteView.note.getTagsList()
         val inheritedTags = noteView.getInheritedTagsList()
 
-        val isDone = state != null && AppPreferences.doneKeywordsSet(context).contains(state)
+        val isDone = prefs.isDone(state)
         val isArchived = tags.contains(ARCHIVE_TAG) || inheritedTags.contains(ARCHIVE_TAG)
 
         val alphaValue = if (isDone || isArchived) {
@@ -279,8 +283,8 @@ class NoteItemViewBinder(private val context: Context, private val inBook: Boole
 
     }
 
-    private fun setupFoldingButtons(holder: NoteItemViewHolder, note: Note) {
-        if (updateFoldingButtons(context, note, holder)) {
+    private fun setupFoldingButtons(holder: NoteItemViewHolder, note: Note, prefs: AppPreferencesSnapshot) {
+        if (updateFoldingButtons(context, note, holder, prefs)) {
             // Folding button
             holder.binding.itemHeadFoldButton.setOnClickListener {
                 toggleFoldedState(note.id)
@@ -311,13 +315,14 @@ class NoteItemViewBinder(private val context: Context, private val inBook: Boole
     /**
      * Change folding button appearance.
      */
-    private fun updateFoldingButtons(context: Context, note: Note, holder: NoteItemViewHolder): Boolean {
+    private fun updateFoldingButtons(
+            context: Context, note: Note, holder: NoteItemViewHolder, prefs: AppPreferencesSnapshot): Boolean {
         var isVisible = false
 
         if (inBook) {
             val contentFoldable = note.hasContent() &&
-                    AppPreferences.isNotesContentFoldable(context) &&
-                    AppPreferences.isNotesContentDisplayedInList(context)
+                    prefs.isNotesContentFoldable &&
+                    prefs.isNotesContentDisplayedInList
 
             if (note.position.descendantsCount > 0 || contentFoldable) {
                 isVisible = true
@@ -162,18 +162,14 @@ abstract class NotesFragment : CommonFragment(), TimestampDialogFragment.OnDateT
     private fun getScheduledTimeForNote(id: Long): OrgDateTime? {
         val note = dataRepository.getNoteView(id)
 
-        return if (note?.scheduledRangeString != null) {
-            OrgDateTime.parse(note.scheduledTimeString)
-        } else null
+        return note?.scheduledRange?.startTime
 
     }
 
     private fun getDeadlineTimeForNote(id: Long): OrgDateTime? {
         val note = dataRepository.getNoteView(id)
 
-        return if (note?.deadlineRangeString != null) {
-            OrgDateTime.parse(note.deadlineTimeString)
-        } else null
+        return note?.deadlineRange?.startTime
 
     }
 
@@ -1,9 +1,11 @@
 package com.orgzly.android.ui.notes.query
 
 import androidx.lifecycle.LiveData
+import androidx.lifecycle.MediatorLiveData
 import androidx.lifecycle.MutableLiveData
 import androidx.lifecycle.Transformations
 import com.orgzly.BuildConfig
+import com.orgzly.android.App
 import com.orgzly.android.data.DataRepository
 import com.orgzly.android.db.entity.NoteView
 import com.orgzly.android.ui.AppBar
@@ -41,6 +43,76 @@ class QueryViewModel(private val dataRepository: DataRepository) : CommonViewMod
         }
     }
 
+    /**
+     * Notes loaded so far, in the order of [ids] (all notes matching the query).
+     */
+    data class Page(val ids: List<Long>, val notes: List<NoteView>) {
+        val hasMore: Boolean
+            get() = notes.size < ids.size
+    }
+
+    private val pagedIds = Transformations.switchMap(notesParams) { params ->
+        if (params.query != null) {
+            dataRepository.selectNoteIdsFromQueryLiveData(params.query)
+        } else {
+            MutableLiveData<List<Long>>()
+        }
+    }
+
+    /* Incremented for every load, so that results of outdated loads are dropped. */
+    private var pageLoad = 0
+
+    private var isPageLoading = false
+
+    /**
+     * Same notes as [data], but loaded in pages as [loadMore] is called.
+     * When the result changes, as many notes as were already displayed are reloaded.
+     */
+    val pagedData = MediatorLiveData<Page>().apply {
+        addSource(pagedIds) { ids ->
+            val count = maxOf(value?.notes?.size ?: 0, PAGE_SIZE)
+
+            loadPage(Page(ids, emptyList()), count)
+        }
+    }
+
+    fun loadMore() {
+        val page = pagedData.value ?: return
+
+        if (page.hasMore && !isPageLoading) {
+            loadPage(page, page.notes.size + PAGE_SIZE)
+        }
+    }
+
+    /* Loads notes following the ones already in the page, up to the count. */
+    private fun loadPage(page: Page, count: Int) {
+        val load = ++pageLoad
+
+        isPageLoading = true
+
+        App.EXECUTORS.diskIO().execute {
+            val ids = page.ids.subList(page.notes.size, minOf(count, page.ids.size))
+
+            val notes = page.notes + dataRepository.selectNotes(ids)
+
+            App.EXECUTORS.mainThread().execute {
+                if (load == pageLoad) {
+                    if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Loaded ${notes.size} of ${page.ids.size} notes")
+
+                    isPageLoading = false
+
+                    viewState.value = if (notes.isNotEmpty()) {
+                        ViewState.LOADED
+                    } else {
+                        ViewState.EMPTY
+                    }
+
+                    pagedData.value = Page(page.ids, notes)
+                }
+            }
+        }
+    }
+
     val appBar: AppBar = AppBar(mapOf(
         APP_BAR_DEFAULT_MODE to null,
         APP_BAR_SELECTION_MODE to APP_BAR_DEFAULT_MODE))
@@ -58,5 +130,7 @@ class QueryViewModel(private val dataRepository: DataRepository) : CommonViewMod
 
         const val APP_BAR_DEFAULT_MODE = 0
         const val APP_BAR_SELECTION_MODE = 1
+
+        const val PAGE_SIZE = 100
     }
 }
\ No newline at end of file
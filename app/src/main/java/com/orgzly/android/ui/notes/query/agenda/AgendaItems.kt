@@ -1,10 +1,10 @@
 package com.orgzly.android.ui.notes.query.agenda
 
+import com.orgzly.android.db.entity.AgendaOccurrence
 import com.orgzly.android.db.entity.NoteView
 import com.orgzly.android.query.Query
 import com.orgzly.android.query.user.InternalQueryParser
 import com.orgzly.android.ui.TimeType
-import com.orgzly.android.util.AgendaUtils
 import com.orgzly.org.datetime.OrgInterval
 import com.orgzly.org.datetime.OrgRange
 import org.joda.time.DateTime
@@ -35,6 +35,15 @@ object AgendaItems {
         }
     }
 
+    fun timeType(occurrenceTimeType: Int): TimeType? {
+        return when (occurrenceTimeType) {
+            AgendaOccurrence.SCHEDULED -> TimeType.SCHEDULED
+            AgendaOccurrence.DEADLINE -> TimeType.DEADLINE
+            AgendaOccurrence.EVENT -> TimeType.EVENT
+            else -> null
+        }
+    }
+
     fun getList(
             notes: List<NoteView>, queryString: String?, idMap: MutableMap<Long, Long>
     ): List<AgendaItem> {
@@ -76,54 +85,19 @@ object AgendaItems {
                 .map { i -> now.plusDays(i) }
                 .associateBy({ it.millis }, { mutableListOf<AgendaItem>() })
 
-        val addedPlanningTimes = HashSet<Long>()
-
-        fun addInstances(note: NoteView, timeType: TimeType, timeString: String) {
-            val range = OrgRange.parseOrNull(timeString) ?: return
-
-            if (!range.startTime.isActive) {
-                return
-            }
-
-            val expandable = ExpandableOrgRange.fromRange(timeType, range)
-
-            val times = AgendaUtils.expandOrgDateTime(expandable, now, agendaDays)
-
-            if (times.isOverdueToday) {
-                overdueNotes.add(AgendaItem.Note(agendaItemId, note, timeType))
-                item2databaseIds[agendaItemId] = note.note.id
-                agendaItemId++
-            }
-
-            // Add each note instance to its day bucket
-            times.expanded.forEach { time ->
-                val bucketKey = time.withTimeAtStartOfDay().millis
-
-                dailyNotes[bucketKey]?.let {
-                    it.add(AgendaItem.Note(agendaItemId, note, timeType))
-                    item2databaseIds[agendaItemId] = note.note.id
-                    agendaItemId++
-                }
-            }
-        }
-
+        // Each note is returned once for every day it appears on (see AgendaOccurrence)
         notes.forEach { note ->
-            // Add planning times for a note only once
-            if (!addedPlanningTimes.contains(note.note.id)) {
-                note.scheduledRangeString?.let {
-                    addInstances(note, TimeType.SCHEDULED, it)
-                }
-                note.deadlineRangeString?.let {
-                    addInstances(note, TimeType.DEADLINE, it)
-                }
+            val timeType = note.agendaTimeType?.let { timeType(it) } ?: return@forEach
 
-                addedPlanningTimes.add(note.note.id)
+            val bucket = if (note.agendaIsOverdue == true) {
+                overdueNotes
+            } else {
+                dailyNotes[note.agendaDay] ?: return@forEach
             }
 
-            // Add each note's event
-            note.eventString?.let {
-                addInstances(note, TimeType.EVENT, it)
-            }
+            bucket.add(AgendaItem.Note(agendaItemId, note, timeType))
+            item2databaseIds[agendaItemId] = note.note.id
+            agendaItemId++
         }
 
         val result = mutableListOf<AgendaItem>()
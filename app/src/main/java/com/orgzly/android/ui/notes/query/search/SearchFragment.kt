@@ -11,6 +11,7 @@ import androidx.lifecycle.Observer
 import androidx.lifecycle.ViewModelProvider
 import androidx.recyclerview.widget.DividerItemDecoration
 import androidx.recyclerview.widget.LinearLayoutManager
+import androidx.recyclerview.widget.RecyclerView
 import com.orgzly.BuildConfig
 import com.orgzly.R
 import com.orgzly.android.db.entity.NoteView
@@ -89,6 +90,17 @@ class SearchFragment : QueryFragment(), OnViewHolderClickListener<NoteView> {
             rv.adapter = viewAdapter
             rv.addItemDecoration(dividerItemDecoration)
 
+            // Load more notes before the end of the list is reached
+            rv.addOnScrollListener(object : RecyclerView.OnScrollListener() {
+                override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                    val lastVisible = layoutManager.findLastVisibleItemPosition()
+
+                    if (lastVisible >= viewAdapter.itemCount - QueryViewModel.PAGE_SIZE / 2) {
+                        viewModel.loadMore()
+                    }
+                }
+            })
+
             rv.addOnItemTouchListener(ItemGestureDetector(rv.context, object: ItemGestureDetector.Listener {
                 override fun onSwipe(direction: Int, e1: MotionEvent, e2: MotionEvent) {
                     rv.findChildViewUnder(e1.x, e2.y)?.let { itemView ->
@@ -223,14 +235,13 @@ class SearchFragment : QueryFragment(), OnViewHolderClickListener<NoteView> {
             }
         })
 
-        viewModel.data.observe(viewLifecycleOwner, Observer { notes ->
-            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Observed notes: ${notes.size}")
-
-            viewAdapter.submitList(notes)
+        viewModel.pagedData.observe(viewLifecycleOwner, Observer { page ->
+            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Observed notes: ${page.notes.size} of ${page.ids.size}")
 
-            val ids = notes.mapTo(hashSetOf()) { it.note.id }
+            viewAdapter.submitList(page.notes)
 
-            viewAdapter.getSelection().removeNonExistent(ids)
+            // Selected notes might not be loaded yet
+            viewAdapter.getSelection().removeNonExistent(page.ids.toHashSet())
 
             viewModel.appBar.toModeFromSelectionCount(viewAdapter.getSelection().count)
         })
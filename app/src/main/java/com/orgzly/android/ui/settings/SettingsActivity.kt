@@ -48,6 +48,10 @@ class SettingsActivity : CommonActivity(), Listener {
                 .show()
     }
 
+    override fun onSearchIndexRebuildRequest() {
+        UseCaseWorker.schedule(this, NotesSearchIndexRebuild())
+    }
+
     override fun onGettingStartedNotebookReloadRequest() {
         UseCaseWorker.schedule(this, BookImportGettingStarted())
     }
@@ -66,6 +66,13 @@ class SettingsFragment : PreferenceFragmentCompat(), SharedPreferences.OnSharedP
             }
         }
 
+        preference(R.string.pref_key_rebuild_search_index)?.let {
+            it.setOnPreferenceClickListener {
+                listener?.onSearchIndexRebuildRequest()
+                true
+            }
+        }
+
         preference(R.string.pref_key_reload_getting_started)?.let {
             it.setOnPreferenceClickListener {
                 listener?.onGettingStartedNotebookReloadRequest()
@@ -383,6 +390,7 @@ class SettingsFragment : PreferenceFragmentCompat(), SharedPreferences.OnSharedP
     interface Listener {
         fun onNotesUpdateRequest(action: UseCase)
         fun onDatabaseClearRequest()
+        fun onSearchIndexRebuildRequest()
         fun onGettingStartedNotebookReloadRequest()
         fun onWhatsNewDisplayRequest()
         fun onPreferenceScreen(resource: String)
@@ -12,7 +12,7 @@ import android.text.style.StyleSpan;
 
 import com.orgzly.android.db.entity.Note;
 import com.orgzly.android.db.entity.NoteView;
-import com.orgzly.android.prefs.AppPreferences;
+import com.orgzly.android.prefs.AppPreferencesSnapshot;
 import com.orgzly.android.util.OrgFormatter;
 
 import java.util.List;
@@ -42,13 +42,15 @@ public class TitleGenerator {
     }
 
     public CharSequence generateTitle(NoteView noteView) {
+        AppPreferencesSnapshot prefs = AppPreferencesSnapshot.get(mContext);
+
         Note note = noteView.getNote();
 
         SpannableStringBuilder builder = new SpannableStringBuilder();
 
         /* State. */
         if (note.getState() != null) {
-            builder.append(generateState(note));
+            builder.append(generateState(note, prefs));
         }
 
         /* Priority. */
@@ -86,7 +88,7 @@ public class TitleGenerator {
         }
 
         /* Inherited tags in search results. */
-        if (!inBook && noteView.hasInheritedTags() && AppPreferences.inheritedTagsInSearchResults(mContext)) {
+        if (!inBook && noteView.hasInheritedTags() && prefs.getInheritedTagsInSearchResults()) {
             if (note.hasTags()) {
                 builder.append(INHERITED_TAGS_SEPARATOR);
             } else {
@@ -97,8 +99,8 @@ public class TitleGenerator {
         }
 
         /* Content line number. */
-        if (note.hasContent() && AppPreferences.contentLineCountDisplayed(mContext)) {
-            if (!shouldDisplayContent(note)) {
+        if (note.hasContent() && prefs.getContentLineCountDisplayed()) {
+            if (!shouldDisplayContent(note, prefs)) {
                 builder.append(TITLE_SEPARATOR).append(String.valueOf(note.getContentLineCount()));
                 hasPostTitleText = true;
             }
@@ -117,15 +119,19 @@ public class TitleGenerator {
      * Should note's content be displayed if it exists.
      */
     public boolean shouldDisplayContent(Note note) {
+        return shouldDisplayContent(note, AppPreferencesSnapshot.get(mContext));
+    }
+
+    private boolean shouldDisplayContent(Note note, AppPreferencesSnapshot prefs) {
         boolean display = true;
 
-        if (AppPreferences.isNotesContentDisplayedInList(mContext)) { // Content could be displayed in list
+        if (prefs.isNotesContentDisplayedInList()) { // Content could be displayed in list
             if (inBook) { // In book, folded
-                if (AppPreferences.isNotesContentFoldable(mContext) && note.getPosition().isFolded()) {
+                if (prefs.isNotesContentFoldable() && note.getPosition().isFolded()) {
                     display = false;
                 }
             } else { // In search results, not displaying content
-                if (!AppPreferences.isNotesContentDisplayedInSearch(mContext)) {
+                if (!prefs.isNotesContentDisplayedInSearch()) {
                     display = false;
                 }
             }
@@ -141,12 +147,12 @@ public class TitleGenerator {
         return new SpannableString(TextUtils.join(TAGS_SEPARATOR, tags));
     }
 
-    private CharSequence generateState(Note note) {
+    private CharSequence generateState(Note note, AppPreferencesSnapshot prefs) {
         SpannableString str = new SpannableString(note.getState());
 
         ForegroundColorSpan color;
 
-        if (AppPreferences.doneKeywordsSet(mContext).contains(note.getState())) {
+        if (prefs.isDone(note.getState())) {
             color = attributes.colorDone;
         } else {
             color = attributes.colorTodo;
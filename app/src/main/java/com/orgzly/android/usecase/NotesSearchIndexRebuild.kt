@@ -0,0 +1,16 @@
+package com.orgzly.android.usecase
+
+import com.orgzly.android.AppIntent
+import com.orgzly.android.data.DataRepository
+
+class NotesSearchIndexRebuild : UseCase() {
+    override fun run(dataRepository: DataRepository): UseCaseResult {
+        dataRepository.rebuildSearchIndex()
+
+        return UseCaseResult()
+    }
+
+    override fun toAction(): String {
+        return AppIntent.ACTION_REBUILD_SEARCH_INDEX
+    }
+}
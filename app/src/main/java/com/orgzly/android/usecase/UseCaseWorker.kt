@@ -43,6 +43,12 @@ class UseCaseWorker(val context: Context, val params: WorkerParameters) : Worker
             AppIntent.ACTION_UPDATE_TIMESTAMPS -> {
                 UseCaseRunner.run(TimestampUpdate())
             }
+
+            AppIntent.ACTION_REBUILD_SEARCH_INDEX -> {
+                broadcastNotesUpdate {
+                    UseCaseRunner.run(NotesSearchIndexRebuild())
+                }
+            }
         }
 
         return Result.success()
@@ -2,11 +2,108 @@ package com.orgzly.android.util
 
 import android.util.Log
 import com.orgzly.BuildConfig
+import java.io.ByteArrayInputStream
 import java.io.File
 import java.io.FileInputStream
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.io.Reader
+import java.io.SequenceInputStream
+import java.nio.charset.Charset
+import java.nio.charset.CodingErrorAction
 
 data class Encoding(val used: String, val detected: String?, val selected: String?) {
+
+    /**
+     * File opened for reading, with its encoding determined from the beginning of the file.
+     *
+     * If the sample was valid UTF-8 (or only ASCII) and the rest of the file was not
+     * checked, encoding is not conclusive and [reader] fails with
+     * [java.nio.charset.MalformedInputException] on the first non-UTF-8 input.
+     */
+    class Sampled(val encoding: Encoding, val isConclusive: Boolean, private val inputStream: InputStream) {
+        /**
+         * Reader replaying the sample, followed by the rest of the file.
+         */
+        fun reader(): Reader {
+            return if (isConclusive) {
+                InputStreamReader(inputStream, encoding.used)
+
+            } else {
+                val decoder = Charset.forName(encoding.used).newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT)
+
+                InputStreamReader(inputStream, decoder)
+            }
+        }
+    }
+
     companion object {
+        /**
+         * Open the file and determine encoding to use -- detect it from at most
+         * [sampleSize] bytes at the beginning of the file or force it.
+         *
+         * File is read only once, as the sample is replayed by the returned reader.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun sample(file: File, selectedEncoding: String?, sampleSize: Int = DEFAULT_SAMPLE_SIZE): Sampled {
+            val inputStream = FileInputStream(file)
+
+            if (selectedEncoding != null) {
+                if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Using selected encoding: $selectedEncoding")
+                return Sampled(Encoding(selectedEncoding, null, selectedEncoding), true, inputStream)
+            }
+
+            try {
+                val startedAt = System.currentTimeMillis()
+
+                val sample = ByteArray(minOf(file.length(), sampleSize.toLong()).toInt())
+
+                var length = 0
+                while (length < sample.size) {
+                    val n = inputStream.read(sample, length, sample.size - length)
+                    if (n == -1) {
+                        break
+                    }
+                    length += n
+                }
+
+                /* Whole file fits in the sample. */
+                val endReached = length < sampleSize
+
+                val detect = EncodingDetect.getInstance(sample, length)
+
+                val detectedEncoding = detect.encoding
+
+                if (BuildConfig.LOG_DEBUG) {
+                    val ms = System.currentTimeMillis() - startedAt
+                    LogUtils.d(TAG, "Detected $file encoding from $length bytes in ${ms}ms: $detectedEncoding")
+                }
+
+                val usedEncoding = if (detectedEncoding == null) {
+                    if (!detect.isAscii) {
+                        Log.w(TAG, "Encoding for $file not be detected, using $DEFAULT_ENCODING")
+                    }
+                    DEFAULT_ENCODING
+                } else {
+                    detectedEncoding
+                }
+
+                /* Valid UTF-8 found, but there is more to read, which might not be. */
+                val isConclusive = endReached || !detect.isValidUtf8
+
+                val replay = SequenceInputStream(ByteArrayInputStream(sample, 0, length), inputStream)
+
+                return Sampled(Encoding(usedEncoding, detectedEncoding, null), isConclusive, replay)
+
+            } catch (e: Exception) {
+                inputStream.close()
+                throw e
+            }
+        }
+
         /**
          * Determine encoding to use -- detect or force it.
          */
@@ -42,6 +139,8 @@ data class Encoding(val used: String, val detected: String?, val selected: Strin
 
         private const val DEFAULT_ENCODING = "UTF-8"
 
+        const val DEFAULT_SAMPLE_SIZE = 256 * 1024
+
         private val TAG = Encoding::class.java.name
     }
 }
\ No newline at end of file
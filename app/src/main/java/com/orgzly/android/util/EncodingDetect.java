@@ -18,8 +18,13 @@ public class EncodingDetect {
 
     private InputStream fileInputStream;
 
+    private byte[] sample;
+    private int sampleLength;
+
     private boolean hasRan = false;
     private String detectedCharset;
+    private boolean isAscii = false;
+    private boolean isValidUtf8 = false;
 
 
     public static EncodingDetect getInstance(InputStream fileInputStream) {
@@ -30,6 +35,18 @@ public class EncodingDetect {
         return detect;
     }
 
+    /**
+     * Detect encoding using only the beginning of the file, which has already been read.
+     */
+    public static EncodingDetect getInstance(byte[] sample, int length) {
+        EncodingDetect detect = new EncodingDetect();
+
+        detect.sample = sample;
+        detect.sampleLength = length;
+
+        return detect;
+    }
+
     public String getEncoding() {
         detect();
         return detectedCharset;
@@ -40,6 +57,23 @@ public class EncodingDetect {
         return detectedCharset != null;
     }
 
+    /**
+     * True if only ASCII characters were found in the sample.
+     */
+    public boolean isAscii() {
+        detect();
+        return isAscii;
+    }
+
+    /**
+     * True if the sample was found to be valid UTF-8 (or only ASCII) without a BOM.
+     * Bytes following the sample could still be in some other encoding.
+     */
+    public boolean isValidUtf8() {
+        detect();
+        return isValidUtf8;
+    }
+
     /**
      * Sets charset to detected value.
      */
@@ -55,7 +89,11 @@ public class EncodingDetect {
 //                    break;
 
                 case JUNIVERSALCHARDET:
-                    universalDetect();
+                    if (sample != null) {
+                        sampleDetect();
+                    } else {
+                        universalDetect();
+                    }
                     break;
             }
         }
@@ -165,6 +203,96 @@ public class EncodingDetect {
 //        }
 //    }
 
+    /**
+     * Detect charset of the sample, skipping the detector for the most common cases:
+     * BOM at the beginning, only ASCII characters or valid UTF-8.
+     */
+    private void sampleDetect() {
+        String bomCharset = bomCharset(sample, sampleLength);
+
+        if (bomCharset != null) {
+            detectedCharset = bomCharset;
+            return;
+        }
+
+        switch (scanUtf8(sample, sampleLength)) {
+            case ASCII:
+                isAscii = true;
+                isValidUtf8 = true;
+                return;
+
+            case UTF_8:
+                detectedCharset = "UTF-8";
+                isValidUtf8 = true;
+                return;
+
+            default:
+                UniversalDetector detector = new UniversalDetector(null);
+                detector.handleData(sample, 0, sampleLength);
+                detector.dataEnd();
+
+                detectedCharset = detector.getDetectedCharset();
+        }
+    }
+
+    private static String bomCharset(byte[] buf, int len) {
+        if (len >= 4 && (buf[0] & 0xFF) == 0xFF && (buf[1] & 0xFF) == 0xFE && buf[2] == 0 && buf[3] == 0) {
+            return "UTF-32LE";
+        } else if (len >= 4 && buf[0] == 0 && buf[1] == 0 && (buf[2] & 0xFF) == 0xFE && (buf[3] & 0xFF) == 0xFF) {
+            return "UTF-32BE";
+        } else if (len >= 3 && (buf[0] & 0xFF) == 0xEF && (buf[1] & 0xFF) == 0xBB && (buf[2] & 0xFF) == 0xBF) {
+            return "UTF-8";
+        } else if (len >= 2 && (buf[0] & 0xFF) == 0xFE && (buf[1] & 0xFF) == 0xFF) {
+            return "UTF-16BE";
+        } else if (len >= 2 && (buf[0] & 0xFF) == 0xFF && (buf[1] & 0xFF) == 0xFE) {
+            return "UTF-16LE";
+        }
+
+        return null;
+    }
+
+    private enum Utf8ScanResult {
+        ASCII, UTF_8, INVALID
+    }
+
+    /**
+     * Checks if the sample is valid UTF-8. Sequence cut off at the end of the sample is accepted.
+     */
+    private static Utf8ScanResult scanUtf8(byte[] buf, int len) {
+        boolean ascii = true;
+
+        int i = 0;
+        while (i < len) {
+            int b = buf[i] & 0xFF;
+
+            int continuationBytes;
+
+            if (b < 0x80) {
+                i++;
+                continue;
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                continuationBytes = 1;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                continuationBytes = 2;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                continuationBytes = 3;
+            } else {
+                return Utf8ScanResult.INVALID;
+            }
+
+            ascii = false;
+            i++;
+
+            for (int j = 0; j < continuationBytes && i < len; j++, i++) {
+                if ((buf[i] & 0xC0) != 0x80) {
+                    return Utf8ScanResult.INVALID;
+                }
+            }
+        }
+
+        return ascii ? Utf8ScanResult.ASCII : Utf8ScanResult.UTF_8;
+    }
+
     /**
      * juniversalchardet is a Java port of 'universalchardet',
      * that is the encoding detector library of Mozilla.
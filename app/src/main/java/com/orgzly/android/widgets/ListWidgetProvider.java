@@ -159,7 +159,20 @@ public class ListWidgetProvider extends AppWidgetProvider {
 
         ComponentName thisAppWidgetComponentName = new ComponentName(context.getPackageName(), ListWidgetProvider.class.getName());
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(thisAppWidgetComponentName);
-        appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.list_widget_list_view);
+
+        /*
+         * Create rows in the background, before widgets ask for them.
+         * Widgets whose rows did not change are not updated at all.
+         */
+        App.EXECUTORS.diskIO().execute(() -> {
+            for (int appWidgetId : appWidgetIds) {
+                SavedSearch savedSearch = getSavedSearch(context, appWidgetId);
+
+                if (ListWidgetRows.prepare(context, dataRepository, appWidgetId, savedSearch.getQuery())) {
+                    appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetId, R.id.list_widget_list_view);
+                }
+            }
+        });
     }
 
     @Override
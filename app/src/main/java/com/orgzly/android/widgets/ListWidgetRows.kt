@@ -0,0 +1,185 @@
+package com.orgzly.android.widgets
+
+import android.content.Context
+import android.util.LruCache
+import com.orgzly.BuildConfig
+import com.orgzly.R
+import com.orgzly.android.data.DataRepository
+import com.orgzly.android.db.entity.NoteView
+import com.orgzly.android.prefs.AppPreferencesSnapshot
+import com.orgzly.android.query.Query
+import com.orgzly.android.query.sql.QueryResultCache
+import com.orgzly.android.query.user.InternalQueryParser
+import com.orgzly.android.ui.TimeType
+import com.orgzly.android.ui.notes.query.agenda.AgendaItem
+import com.orgzly.android.ui.notes.query.agenda.AgendaItems
+import com.orgzly.android.ui.util.TitleGenerator
+import com.orgzly.android.util.LogUtils
+import com.orgzly.android.util.UserTimeFormatter
+import org.joda.time.DateTime
+
+/**
+ * Formatted rows of list widgets, by query string.
+ *
+ * Rows are reused by all widgets displaying the same query, until one of the books
+ * which can affect the results changes, preferences or configuration change, or,
+ * for queries depending on the current time, until the day (or minute) passes.
+ */
+object ListWidgetRows {
+    private val TAG = ListWidgetRows::class.java.name
+
+    sealed class Row(open val id: Long) {
+        data class Divider(override val id: Long, val text: CharSequence) : Row(id)
+
+        data class Note(
+                override val id: Long,
+                val noteId: Long,
+                val bookId: Long,
+                val title: CharSequence,
+                val bookName: String?,
+                val closed: CharSequence?,
+                val scheduled: CharSequence?,
+                val deadline: CharSequence?,
+                val event: CharSequence?,
+                val isCheckmarkDisplayed: Boolean
+        ) : Row(id)
+    }
+
+    private data class Fingerprint(
+            val queryFingerprint: Map<Long, Long>,
+            val prefsVersion: Int,
+            val configuration: Int)
+
+    private class Entry(val fingerprint: Fingerprint, val expiresAt: Long, val rows: List<Row>)
+
+    private const val MAX_QUERIES = 16
+
+    private val entries = LruCache<String, Entry>(MAX_QUERIES)
+
+    /* Rows for the same query are only created once, even when requested concurrently. */
+    private val locks = HashMap<String, Any>()
+
+    /* Rows each widget was last updated with. */
+    private val widgetRows = HashMap<Int, List<Row>>()
+
+    /**
+     * Creates rows for the widget's query, if cached ones are outdated.
+     * Returns true if the widget has to be updated, as its rows changed.
+     */
+    @JvmStatic
+    fun prepare(context: Context, dataRepository: DataRepository, appWidgetId: Int, queryString: String): Boolean {
+        val rows = get(context, dataRepository, queryString)
+
+        return synchronized(widgetRows) {
+            widgetRows.put(appWidgetId, rows) !== rows
+        }
+    }
+
+    /**
+     * Rows for the query. Creates them if cached ones are outdated.
+     */
+    fun get(context: Context, dataRepository: DataRepository, queryString: String): List<Row> {
+        val lock = synchronized(locks) {
+            locks.getOrPut(queryString) { Any() }
+        }
+
+        synchronized(lock) {
+            val query = InternalQueryParser().parse(queryString)
+
+            /* Taken before running the query, so that a concurrent change is noticed next time. */
+            val fingerprint = fingerprint(context, dataRepository, query)
+
+            val now = DateTime.now()
+
+            entries.get(queryString)?.let { entry ->
+                if (entry.fingerprint == fingerprint && now.millis < entry.expiresAt) {
+                    if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Reusing ${entry.rows.size} rows for $queryString")
+                    return entry.rows
+                }
+            }
+
+            val rows = createRows(context, dataRepository, query)
+
+            entries.put(queryString, Entry(fingerprint, QueryResultCache.expiresAt(query, now), rows))
+
+            if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG, "Created ${rows.size} rows for $queryString")
+
+            return rows
+        }
+    }
+
+    /* Rows also depend on preferences and on the theme, unlike query results. */
+    private fun fingerprint(context: Context, dataRepository: DataRepository, query: Query): Fingerprint {
+        return Fingerprint(
+                dataRepository.getQueryFingerprint(query),
+                AppPreferencesSnapshot.get(context).version,
+                context.resources.configuration.hashCode())
+    }
+
+    private fun createRows(context: Context, dataRepository: DataRepository, query: Query): List<Row> {
+        val notes = dataRepository.selectNotesFromQuery(query)
+
+        val prefs = AppPreferencesSnapshot.get(context)
+
+        val userTimeFormatter = UserTimeFormatter(context)
+
+        // Colors depend on current theme
+        val titleGenerator = TitleGenerator(context, false, WidgetStyle.getTitleAttributes(context))
+
+        fun noteRow(id: Long, noteView: NoteView, agendaTimeType: TimeType?): Row.Note {
+            var scheduled = noteView.scheduledRange
+            var deadline = noteView.deadlineRange
+            var event = noteView.eventRange
+
+            // In Agenda only display time responsible for item's presence
+            when (agendaTimeType) {
+                TimeType.SCHEDULED -> {
+                    deadline = null
+                    event = null
+                }
+                TimeType.DEADLINE -> {
+                    scheduled = null
+                    event = null
+                }
+                TimeType.EVENT -> {
+                    scheduled = null
+                    deadline = null
+                }
+                else -> {
+                }
+            }
+
+            val closed = noteView.closedRange
+
+            return Row.Note(
+                    id,
+                    noteView.note.id,
+                    noteView.note.position.bookId,
+                    titleGenerator.generateTitle(noteView),
+                    noteView.bookName.takeIf { prefs.widgetDisplayBookName },
+                    closed?.takeIf { prefs.displayPlanning }?.let { userTimeFormatter.formatAll(it) },
+                    scheduled?.takeIf { prefs.displayPlanning }?.let { userTimeFormatter.formatAll(it) },
+                    deadline?.takeIf { prefs.displayPlanning }?.let { userTimeFormatter.formatAll(it) },
+                    event?.takeIf { prefs.displayPlanning }?.let { userTimeFormatter.formatAll(it) },
+                    prefs.widgetDisplayCheckmarks && !prefs.isDone(noteView.note.state))
+        }
+
+        return if (query.isAgenda()) {
+            val idMap = mutableMapOf<Long, Long>()
+            val agendaItems = AgendaItems.getList(notes, query, idMap)
+
+            agendaItems.map {
+                when (it) {
+                    is AgendaItem.Overdue -> Row.Divider(it.id, context.getString(R.string.overdue))
+                    is AgendaItem.Day -> Row.Divider(it.id, userTimeFormatter.formatDate(it.day))
+                    is AgendaItem.Note -> noteRow(it.id, it.note, it.timeType)
+                }
+            }
+
+        } else {
+            notes.map {
+                noteRow(it.note.id, it, null)
+            }
+        }
+    }
+}
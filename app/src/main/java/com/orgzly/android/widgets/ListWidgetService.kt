@@ -6,23 +6,13 @@ import android.util.Log
 import android.view.View
 import android.widget.RemoteViews
 import android.widget.RemoteViewsService
+import androidx.annotation.IdRes
 import com.orgzly.BuildConfig
 import com.orgzly.R
 import com.orgzly.android.App
 import com.orgzly.android.AppIntent
 import com.orgzly.android.data.DataRepository
-import com.orgzly.android.db.entity.NoteView
-import com.orgzly.android.prefs.AppPreferences
-import com.orgzly.android.query.Query
-import com.orgzly.android.query.user.InternalQueryParser
-import com.orgzly.android.ui.TimeType
-import com.orgzly.android.ui.notes.query.agenda.AgendaItem
-import com.orgzly.android.ui.notes.query.agenda.AgendaItems
-import com.orgzly.android.ui.util.TitleGenerator
 import com.orgzly.android.util.LogUtils
-import com.orgzly.android.util.UserTimeFormatter
-import com.orgzly.org.datetime.OrgRange
-import org.joda.time.DateTime
 import javax.inject.Inject
 
 class ListWidgetService : RemoteViewsService() {
@@ -43,33 +33,12 @@ class ListWidgetService : RemoteViewsService() {
         return ListWidgetViewsFactory(applicationContext, queryString)
     }
 
-    private sealed class WidgetEntry(open val id: Long) {
-        data class Overdue(override val id: Long) : WidgetEntry(id)
-
-        data class Day(override val id: Long, val day: DateTime) : WidgetEntry(id)
-
-        data class Note(
-                override val id: Long,
-                val noteView: NoteView,
-                val agendaTimeType: TimeType? = null
-        ) : WidgetEntry(id)
-    }
-
     inner class ListWidgetViewsFactory(
             val context: Context,
             private val queryString: String
     ) : RemoteViewsFactory {
 
-        private val query: Query by lazy {
-            val parser = InternalQueryParser()
-            parser.parse(queryString)
-        }
-
-        private val userTimeFormatter by lazy {
-            UserTimeFormatter(context)
-        }
-
-        private var dataList: List<WidgetEntry> = emptyList()
+        private var dataList: List<ListWidgetRows.Row> = emptyList()
 
         override fun onCreate() {
             if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG)
@@ -86,25 +55,7 @@ class ListWidgetService : RemoteViewsService() {
         override fun onDataSetChanged() {
             if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG)
 
-            val notes = dataRepository.selectNotesFromQuery(query)
-
-            if (query.isAgenda()) {
-                val idMap = mutableMapOf<Long, Long>()
-                val agendaItems = AgendaItems.getList(notes, query, idMap)
-
-                dataList = agendaItems.map {
-                    when (it) {
-                        is AgendaItem.Overdue -> WidgetEntry.Overdue(it.id)
-                        is AgendaItem.Day -> WidgetEntry.Day(it.id, it.day)
-                        is AgendaItem.Note -> WidgetEntry.Note(it.id, it.note, it.timeType)
-                    }
-                }
-
-            } else {
-                dataList = notes.map {
-                    WidgetEntry.Note(it.note.id, it)
-                }
-            }
+            dataList = ListWidgetRows.get(context, dataRepository, queryString)
         }
 
         override fun hasStableIds(): Boolean {
@@ -119,22 +70,16 @@ class ListWidgetService : RemoteViewsService() {
                 return null
             }
 
-            return when (val entry = dataList[position]) {
-                is WidgetEntry.Overdue ->
-                    RemoteViews(context.packageName, R.layout.item_list_widget_divider).apply {
-                        setupRemoteViews(this)
-                        WidgetStyle.updateDivider(this, context)
-                    }
-
-                is WidgetEntry.Day ->
+            return when (val row = dataList[position]) {
+                is ListWidgetRows.Row.Divider ->
                     RemoteViews(context.packageName, R.layout.item_list_widget_divider).apply {
-                        setupRemoteViews(this, entry)
+                        setTextViewText(R.id.widget_list_item_divider_value, row.text)
                         WidgetStyle.updateDivider(this, context)
                     }
 
-                is WidgetEntry.Note ->
+                is ListWidgetRows.Row.Note ->
                     RemoteViews(context.packageName, R.layout.item_list_widget).apply {
-                        setupRemoteViews(this, entry)
+                        setupRemoteViews(this, row)
                         WidgetStyle.updateNote(this, context)
                     }
             }
@@ -152,116 +97,52 @@ class ListWidgetService : RemoteViewsService() {
             if (BuildConfig.LOG_DEBUG) LogUtils.d(TAG)
         }
 
-        private fun setupRemoteViews(views: RemoteViews) {
-            views.setTextViewText(
-                    R.id.widget_list_item_divider_value,
-                    context.getString(R.string.overdue))
-        }
-
-        private fun setupRemoteViews(views: RemoteViews, entry: WidgetEntry.Day) {
-            views.setTextViewText(
-                    R.id.widget_list_item_divider_value,
-                    userTimeFormatter.formatDate(entry.day))
-        }
-
-        private fun setupRemoteViews(row: RemoteViews, entry: WidgetEntry.Note) {
-            val noteView = entry.noteView
-
-            val displayPlanningTimes = AppPreferences.displayPlanning(context)
-            val displayBookName = AppPreferences.widgetDisplayBookName(context)
-            val doneStates = AppPreferences.doneKeywordsSet(context)
-
-            // Title (colors depend on current theme)
-            val titleGenerator = TitleGenerator(context, false, WidgetStyle.getTitleAttributes(context))
-            row.setTextViewText(R.id.item_list_widget_title, titleGenerator.generateTitle(noteView))
+        private fun setupRemoteViews(row: RemoteViews, note: ListWidgetRows.Row.Note) {
+            row.setTextViewText(R.id.item_list_widget_title, note.title)
 
             // Notebook name
-            if (displayBookName) {
-                row.setTextViewText(R.id.item_list_widget_book_text, noteView.bookName)
+            if (note.bookName != null) {
+                row.setTextViewText(R.id.item_list_widget_book_text, note.bookName)
                 row.setViewVisibility(R.id.item_list_widget_book, View.VISIBLE)
             } else {
                 row.setViewVisibility(R.id.item_list_widget_book, View.GONE)
             }
 
-            // Closed time
-            if (displayPlanningTimes && noteView.closedRangeString != null) {
-                val time = userTimeFormatter.formatAll(OrgRange.parse(noteView.closedRangeString))
-                row.setTextViewText(R.id.item_list_widget_closed_text, time)
-                row.setViewVisibility(R.id.item_list_widget_closed, View.VISIBLE)
-            } else {
-                row.setViewVisibility(R.id.item_list_widget_closed, View.GONE)
-            }
-
-            var scheduled = noteView.scheduledRangeString
-            var deadline = noteView.deadlineRangeString
-            var event = noteView.eventString
-
-            // In Agenda only display time responsible for item's presence
-            when (entry.agendaTimeType) {
-                TimeType.SCHEDULED -> {
-                    deadline = null
-                    event = null
-                }
-                TimeType.DEADLINE -> {
-                    scheduled = null
-                    event = null
-                }
-                TimeType.EVENT -> {
-                    scheduled = null
-                    deadline = null
-                }
-                else -> {
-                }
-            }
-
-            // Scheduled time
-            if (displayPlanningTimes && scheduled != null) {
-                val time = userTimeFormatter.formatAll(OrgRange.parse(scheduled))
-                row.setTextViewText(R.id.item_list_widget_scheduled_text, time)
-                row.setViewVisibility(R.id.item_list_widget_scheduled, View.VISIBLE)
-            } else {
-                row.setViewVisibility(R.id.item_list_widget_scheduled, View.GONE)
-            }
-
-            // Deadline time
-            if (displayPlanningTimes && deadline != null) {
-                val time = userTimeFormatter.formatAll(OrgRange.parse(deadline))
-                row.setTextViewText(R.id.item_list_widget_deadline_text, time)
-                row.setViewVisibility(R.id.item_list_widget_deadline, View.VISIBLE)
-            } else {
-                row.setViewVisibility(R.id.item_list_widget_deadline, View.GONE)
-            }
-
-            // Event time
-            if (displayPlanningTimes && event != null) {
-                val time = userTimeFormatter.formatAll(OrgRange.parse(event))
-                row.setTextViewText(R.id.item_list_widget_event_text, time)
-                row.setViewVisibility(R.id.item_list_widget_event, View.VISIBLE)
-            } else {
-                row.setViewVisibility(R.id.item_list_widget_event, View.GONE)
-            }
-
+            // Planning times
+            setupTime(row, R.id.item_list_widget_closed, R.id.item_list_widget_closed_text, note.closed)
+            setupTime(row, R.id.item_list_widget_scheduled, R.id.item_list_widget_scheduled_text, note.scheduled)
+            setupTime(row, R.id.item_list_widget_deadline, R.id.item_list_widget_deadline_text, note.deadline)
+            setupTime(row, R.id.item_list_widget_event, R.id.item_list_widget_event_text, note.event)
 
             // Check mark
-            if (!AppPreferences.widgetDisplayCheckmarks(context) || doneStates.contains(noteView.note.state)) {
-                row.setViewVisibility(R.id.item_list_widget_done, View.GONE)
-            } else {
+            if (note.isCheckmarkDisplayed) {
                 row.setViewVisibility(R.id.item_list_widget_done, View.VISIBLE)
+            } else {
+                row.setViewVisibility(R.id.item_list_widget_done, View.GONE)
             }
 
             // Intent for opening note
             val openIntent = Intent()
             openIntent.putExtra(AppIntent.EXTRA_CLICK_TYPE, ListWidgetProvider.OPEN_CLICK_TYPE)
-            openIntent.putExtra(AppIntent.EXTRA_NOTE_ID, noteView.note.id)
-            openIntent.putExtra(AppIntent.EXTRA_BOOK_ID, noteView.note.position.bookId)
+            openIntent.putExtra(AppIntent.EXTRA_NOTE_ID, note.noteId)
+            openIntent.putExtra(AppIntent.EXTRA_BOOK_ID, note.bookId)
             row.setOnClickFillInIntent(R.id.item_list_widget_layout, openIntent)
 
             // Intent for marking note done
             val doneIntent = Intent()
             doneIntent.putExtra(AppIntent.EXTRA_CLICK_TYPE, ListWidgetProvider.DONE_CLICK_TYPE)
-            doneIntent.putExtra(AppIntent.EXTRA_NOTE_ID, noteView.note.id)
+            doneIntent.putExtra(AppIntent.EXTRA_NOTE_ID, note.noteId)
             row.setOnClickFillInIntent(R.id.item_list_widget_done, doneIntent)
         }
+
+        private fun setupTime(row: RemoteViews, @IdRes layoutId: Int, @IdRes textId: Int, time: CharSequence?) {
+            if (time != null) {
+                row.setTextViewText(textId, time)
+                row.setViewVisibility(layoutId, View.VISIBLE)
+            } else {
+                row.setViewVisibility(layoutId, View.GONE)
+            }
+        }
     }
 
     companion object {
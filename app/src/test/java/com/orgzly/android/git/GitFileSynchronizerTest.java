@@ -0,0 +1,141 @@
+package com.orgzly.android.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import android.net.Uri;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class GitFileSynchronizerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File repoDir;
+
+    private Git git;
+
+    private GitFileSynchronizer synchronizer;
+
+    @Before
+    public void setUp() throws Exception {
+        repoDir = folder.newFolder("repo");
+
+        git = Git.init().setDirectory(repoDir).call();
+
+        write(new File(repoDir, "book-a.org"), "* Note A-01\n");
+        write(new File(repoDir, "book-b.org"), "* Note B-01\n");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("Initial").call();
+
+        /* Set at the start of every sync, merge branches start from it. */
+        git.branchCreate().setName("orgzly-pre-sync-marker").call();
+
+        synchronizer = new GitFileSynchronizer(git, new TestPreferences());
+    }
+
+    @After
+    public void tearDown() {
+        git.close();
+    }
+
+    @Test
+    public void testConflictingMergeRefusedWithUnrelatedChange() throws Exception {
+        RevCommit initial = synchronizer.currentHead();
+        ObjectId initialRevision = synchronizer.getFileRevision("book-a.org", initial);
+
+        /* Working tree is fully checked once here, later only written files are. */
+        synchronizer.updateAndCommitExistingFile(newFile("* Note A-01 (local)\n"), "book-a.org");
+
+        write(new File(repoDir, "book-b.org"), "* Note B-01 (changed outside)\n");
+
+        try {
+            synchronizer.updateAndCommitFileFromRevisionAndMerge(
+                    newFile("* Note A-01 (remote)\n"), "book-a.org", initialRevision, initial);
+            fail("Merge should be refused");
+
+        } catch (IOException e) {
+            assertEquals("Refusing to update because there are uncommitted changes.", e.getMessage());
+        }
+
+        assertEquals("* Note B-01 (changed outside)\n", read(new File(repoDir, "book-b.org")));
+        assertEquals("* Note A-01 (local)\n", read(new File(repoDir, "book-a.org")));
+    }
+
+    @Test
+    public void testConflictingMergeWithoutOtherChanges() throws Exception {
+        RevCommit initial = synchronizer.currentHead();
+        ObjectId initialRevision = synchronizer.getFileRevision("book-a.org", initial);
+
+        synchronizer.updateAndCommitExistingFile(newFile("* Note A-01 (local)\n"), "book-a.org");
+
+        assertFalse(synchronizer.updateAndCommitFileFromRevisionAndMerge(
+                newFile("* Note A-01 (remote)\n"), "book-a.org", initialRevision, initial));
+
+        assertEquals("* Note B-01\n", read(new File(repoDir, "book-b.org")));
+    }
+
+    private File newFile(String content) throws IOException {
+        File file = folder.newFile();
+        write(file, content);
+        return file;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static class TestPreferences implements GitPreferences {
+        @Override
+        public GitTransportSetter createTransportSetter() {
+            return null;
+        }
+
+        @Override
+        public String getAuthor() {
+            return "Orgzly";
+        }
+
+        @Override
+        public String getEmail() {
+            return "orgzly@example.com";
+        }
+
+        @Override
+        public String repositoryFilepath() {
+            return null;
+        }
+
+        @Override
+        public String remoteName() {
+            return "origin";
+        }
+
+        @Override
+        public String branchName() {
+            return "master";
+        }
+
+        @Override
+        public Uri remoteUri() {
+            return null;
+        }
+    }
+}